@@ -0,0 +1,255 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import uk.co.petertribble.jstripchart.ChartRenderer;
+import uk.co.petertribble.jstripchart.JSparkChart;
+import uk.co.petertribble.jstripchart.JStackedStripChart2;
+import uk.co.petertribble.jstripchart.JStripChart;
+import uk.co.petertribble.jstripchart.JStripChart2;
+import uk.co.petertribble.jstripchart.JStripChartN;
+import uk.co.petertribble.jstripchart.SampleAggregator;
+import uk.co.petertribble.jstripchart.StripChartModel;
+
+/**
+ * A chart set up for measuring, along with the data fed to it, shared by
+ * the benchmarks so they all measure the same charts.
+ *
+ * The kinds of chart are strip, strip2, stacked, spark, and stripN for
+ * the charts of those names, renderer for a ChartRenderer drawing a strip
+ * chart, aggregated for a strip chart fed by a SampleAggregator, and
+ * model for a bare StripChartModel with no chart. Data is added the way
+ * an application would add it, through the chart, without allocating.
+ */
+final class ChartFixture {
+
+    /**
+     * The height of the charts.
+     */
+    static final int HEIGHT = 40;
+
+    /**
+     * The number of samples in each data point for the aggregated chart.
+     */
+    static final int NAGGREGATE = 100;
+
+    /**
+     * The number of values we cycle through, a power of two.
+     */
+    private static final int NVALUES = 1 << 16;
+
+    /**
+     * The values to be added.
+     */
+    private final double[] values;
+    /**
+     * The index of the next value to be added.
+     */
+    private int next;
+    /**
+     * The model underneath the chart.
+     */
+    private final StripChartModel model;
+    /**
+     * Adds a single value to every series of the chart.
+     */
+    private final DoubleConsumer adder;
+    /**
+     * Paints the chart, or null if there's no chart.
+     */
+    private final Consumer<Graphics2D> painter;
+
+    /**
+     * Create a chart and fill its model with data, as a chart that has been
+     * running a while.
+     *
+     * @param chart the kind of chart
+     * @param width the width of the chart, in pixels
+     * @param size the number of data points the model holds
+     * @param style the style of the strip charts and renderer
+     * @param incremental whether the strip charts render incrementally
+     * @param autoscale whether the chart scales to fit the data
+     * @param falling true for values in decreasing order, false for random
+     * values
+     */
+    ChartFixture(final String chart, final int width, final int size,
+		final int style, final boolean incremental,
+		final boolean autoscale, final boolean falling) {
+	values = new double[NVALUES];
+	Random r = new Random(42L);
+	for (int i = 0; i < NVALUES; i++) {
+	    values[i] = falling ? NVALUES - i : r.nextDouble() * 100.0d;
+	}
+	switch (chart) {
+	case "strip":
+	    model = new StripChartModel(size);
+	    JStripChart c1 = new JStripChart(model, width, HEIGHT,
+				Color.BLUE, Color.RED);
+	    c1.setStyle(style);
+	    c1.setIncrementalRendering(incremental);
+	    if (!autoscale) {
+		c1.setMax(100.0d);
+	    }
+	    c1.setSize(width, HEIGHT);
+	    adder = c1::add;
+	    painter = c1::paint;
+	    break;
+	case "strip2":
+	    model = new StripChartModel(2, size);
+	    JStripChart2 c2 = new JStripChart2(model, width, HEIGHT,
+				Color.BLUE, Color.RED, Color.GREEN);
+	    c2.setStyle(style);
+	    c2.setIncrementalRendering(incremental);
+	    if (!autoscale) {
+		c2.setMax(200.0d);
+	    }
+	    c2.setSize(width, HEIGHT);
+	    adder = d -> c2.add(d, d * 0.5d);
+	    painter = c2::paint;
+	    break;
+	case "stacked":
+	    model = new StripChartModel(2, size);
+	    JStackedStripChart2 c3 = new JStackedStripChart2(model, width,
+				HEIGHT, Color.BLUE, Color.RED, Color.GREEN);
+	    c3.setStyle(style);
+	    c3.setIncrementalRendering(incremental);
+	    if (!autoscale) {
+		c3.setMax(200.0d);
+	    }
+	    c3.setSize(width, HEIGHT);
+	    adder = d -> c3.add(d, d * 0.5d);
+	    painter = c3::paint;
+	    break;
+	case "spark":
+	    model = new StripChartModel(size);
+	    JSparkChart c4 = new JSparkChart(model, width, HEIGHT,
+				Color.WHITE, Color.BLACK);
+	    if (!autoscale) {
+		c4.setMax(100.0d);
+	    }
+	    c4.setSize(width, HEIGHT);
+	    adder = c4::add;
+	    painter = c4::paint;
+	    break;
+	case "stripN":
+	    model = new StripChartModel(4, size);
+	    JStripChartN c5 = new JStripChartN(model, width, HEIGHT,
+				Color.BLUE, Color.RED, Color.GREEN,
+				Color.YELLOW, Color.CYAN);
+	    c5.setStyle(style);
+	    c5.setIncrementalRendering(incremental);
+	    if (!autoscale) {
+		c5.setMax(400.0d);
+	    }
+	    c5.setSize(width, HEIGHT);
+	    // reuse one column, as add(double...) would allocate
+	    double[] column = new double[4];
+	    adder = d -> {
+		column[0] = d;
+		column[1] = d * 0.5d;
+		column[2] = d * 0.25d;
+		column[3] = d * 0.125d;
+		c5.add(column, 0);
+	    };
+	    painter = c5::paint;
+	    break;
+	case "renderer":
+	    model = new StripChartModel(size);
+	    ChartRenderer renderer = new ChartRenderer(
+			ChartRenderer.TYPE_STRIP, Color.BLUE, Color.RED);
+	    renderer.setStyle(style);
+	    if (!autoscale) {
+		renderer.setMax(100.0d);
+	    }
+	    StripChartModel rm = model;
+	    adder = rm::add;
+	    painter = g -> renderer.render(rm, g, width, HEIGHT);
+	    break;
+	case "aggregated":
+	    model = new StripChartModel(size);
+	    JStripChart c6 = new JStripChart(model, width, HEIGHT,
+				Color.BLUE, Color.RED);
+	    if (!autoscale) {
+		c6.setMax(100.0d);
+	    }
+	    c6.setSize(width, HEIGHT);
+	    SampleAggregator agg = new SampleAggregator(model,
+			SampleAggregator.MAXIMUM, NAGGREGATE);
+	    adder = agg::add;
+	    painter = c6::paint;
+	    break;
+	default:
+	    model = new StripChartModel(size);
+	    StripChartModel m = model;
+	    adder = m::add;
+	    painter = null;
+	    break;
+	}
+	int nfill = "aggregated".equals(chart) ? size * NAGGREGATE : size;
+	for (int i = 0; i < nfill; i++) {
+	    add();
+	}
+    }
+
+    /**
+     * Return the model underneath the chart.
+     *
+     * @return the StripChartModel holding the data
+     */
+    StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Add the next value to the chart.
+     */
+    void add() {
+	adder.accept(values[next]);
+	next = (next + 1) & (NVALUES - 1);
+    }
+
+    /**
+     * Add a block of values straight to the model, which notifies the
+     * chart once for the whole block.
+     *
+     * @param n the number of values to add, a power of two
+     */
+    void addBulk(final int n) {
+	int off = next & -n;
+	model.add(values, off, n);
+	next = (off + n) & (NVALUES - 1);
+    }
+
+    /**
+     * Paint the chart.
+     *
+     * @param g2 the Graphics2D to paint on
+     */
+    void paint(final Graphics2D g2) {
+	painter.accept(g2);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of adding data to a chart, which is paid on the
+ * thread producing the data and includes storing the value, tracking the
+ * scale, and notifying the chart.
+ *
+ * The falling data set adds values in decreasing order, so the oldest
+ * value is always the largest and drops out of the window on every add.
+ * That was the worst case for the old rescan-on-expiry autoscaling, and
+ * should cost no more than random data now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+
+    /**
+     * The number of values added by each bulk add.
+     */
+    private static final int NBULK = 64;
+
+    /**
+     * The kind of chart the data is added to, or model for a bare
+     * StripChartModel with no chart. The aggregated chart is a strip chart
+     * fed by a SampleAggregator.
+     */
+    @Param({"model", "strip", "strip2", "stacked", "spark", "stripN",
+	    "aggregated"})
+    public String chart;
+
+    /**
+     * The number of data points the model holds.
+     */
+    @Param({"100", "10000"})
+    public int size;
+
+    /**
+     * Whether the chart scales to fit the data.
+     */
+    @Param({"true", "false"})
+    public boolean autoscale;
+
+    /**
+     * The shape of the data, random or falling.
+     */
+    @Param({"random", "falling"})
+    public String data;
+
+    /**
+     * The chart and its data.
+     */
+    private ChartFixture fixture;
+
+    /**
+     * Create the chart and the data, starting with a full model, as a
+     * chart that has been running a while.
+     */
+    @Setup
+    public void setup() {
+	fixture = new ChartFixture(chart, size, size, 0, false, autoscale,
+				"falling".equals(data));
+    }
+
+    /**
+     * Add one value to the chart.
+     */
+    @Benchmark
+    public void add() {
+	fixture.add();
+    }
+
+    /**
+     * Add a block of values straight to the model, which notifies the
+     * chart once for the whole block.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NBULK)
+    public void addBulk() {
+	fixture.addBulk(NBULK);
+    }
+}
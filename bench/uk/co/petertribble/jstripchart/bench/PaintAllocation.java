@@ -0,0 +1,233 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import uk.co.petertribble.jstripchart.JStripChart;
+
+/**
+ * Checks that painting a chart allocates nothing once it's warmed up. The
+ * same charts as the PaintBenchmark are painted into a BufferedImage, both
+ * with no new data and with a data point added before each paint, and the
+ * bytes allocated by the painting thread are counted across the paints.
+ * Adding the data isn't counted, only the paints.
+ *
+ * The one allocation allowed is the small array Java2D allocates inside
+ * each call to drawPolyline, which the charts make once for each line
+ * they draw. What that costs is measured first, rather than assumed.
+ *
+ * This doesn't need JMH, so it can be run with
+ *
+ *   ./build alloc
+ *
+ * and exits with a non-zero status if any chart allocates while painting.
+ * That runs it with -Xbatch, so that the warmup waits for the paint path
+ * to be compiled rather than measuring the interpreter.
+ */
+public final class PaintAllocation {
+
+    /**
+     * The number of paints to warm up with, so that any lazily created
+     * state exists and the paint path is compiled.
+     */
+    private static final int WARMUP = 20000;
+
+    /**
+     * The number of paints measured.
+     */
+    private static final int FRAMES = 1000;
+
+    /**
+     * The kinds of chart painted, as for the PaintBenchmark.
+     */
+    private static final String[] CHARTS = {"strip", "strip2", "stacked",
+					"spark", "stripN", "renderer"};
+    /**
+     * The widths of the charts, in pixels, leaving out the widest charts
+     * of the PaintBenchmark so the check takes a few minutes.
+     */
+    private static final int[] WIDTHS = {100, 400};
+    /**
+     * The numbers of data points in the model for each pixel.
+     */
+    private static final int[] OVERSCANS = {1, 4};
+
+    /**
+     * Counts the bytes allocated by each thread.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+	(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The chart and its data.
+     */
+    private final ChartFixture fixture;
+
+    /*
+     * Create a chart to measure, with a full model.
+     */
+    private PaintAllocation(final String chart, final int width,
+			final int overscan, final int style,
+			final boolean incremental) {
+	fixture = new ChartFixture(chart, width, width * overscan, style,
+				incremental, true, false);
+    }
+
+    /*
+     * Paint the chart repeatedly, adding a data point before each paint
+     * if scrolling, and return the bytes allocated by the paints alone.
+     */
+    private long run(final Graphics2D g2, final boolean scroll,
+			final int frames, final long overhead) {
+	long tid = Thread.currentThread().getId();
+	long total = 0L;
+	for (int i = 0; i < frames; i++) {
+	    if (scroll) {
+		fixture.add();
+	    }
+	    long before = THREADS.getThreadAllocatedBytes(tid);
+	    fixture.paint(g2);
+	    long after = THREADS.getThreadAllocatedBytes(tid);
+	    total += after - before - overhead;
+	}
+	return total;
+    }
+
+    /*
+     * The most a paint may allocate, for the lines drawn with drawPolyline.
+     * Each series is one line, and scrolling may redraw the oldest column
+     * of a series as a second line. Lines are only drawn by the connected
+     * style, and by the solid style to outline series hidden behind
+     * others.
+     */
+    private long allowance(final int style, final long polyline) {
+	return style == JStripChart.STYLE_LINE ? 0L
+	    : 2L * fixture.getModel().getSeriesCount() * polyline;
+    }
+
+    /*
+     * What Java2D allocates in one call to drawPolyline.
+     */
+    private static long polyline() {
+	BufferedImage image = new BufferedImage(2, 2,
+					BufferedImage.TYPE_INT_RGB);
+	Graphics2D g2 = image.createGraphics();
+	int[] x = {0, 1};
+	int[] y = {0, 1};
+	for (int i = 0; i < WARMUP; i++) {
+	    g2.drawPolyline(x, y, 2);
+	}
+	long tid = Thread.currentThread().getId();
+	long before = THREADS.getThreadAllocatedBytes(tid);
+	for (int i = 0; i < FRAMES; i++) {
+	    g2.drawPolyline(x, y, 2);
+	}
+	long after = THREADS.getThreadAllocatedBytes(tid);
+	g2.dispose();
+	return (after - before) / FRAMES;
+    }
+
+    /*
+     * What asking for the allocated bytes costs, so it can be taken off
+     * each measurement.
+     */
+    private static long overhead() {
+	long tid = Thread.currentThread().getId();
+	long least = Long.MAX_VALUE;
+	for (int i = 0; i < 1000; i++) {
+	    long before = THREADS.getThreadAllocatedBytes(tid);
+	    long after = THREADS.getThreadAllocatedBytes(tid);
+	    least = Math.min(least, after - before);
+	}
+	return least;
+    }
+
+    /*
+     * Paint a chart, and report whether it allocates.
+     */
+    private static boolean allocates(final String chart, final int width,
+		final int overscan, final int style, final boolean incremental,
+		final boolean scroll, final long overhead, final long polyline) {
+	PaintAllocation p = new PaintAllocation(chart, width, overscan, style,
+						incremental);
+	BufferedImage image = new BufferedImage(width, ChartFixture.HEIGHT,
+					BufferedImage.TYPE_INT_RGB);
+	Graphics2D g2 = image.createGraphics();
+	p.run(g2, scroll, WARMUP, overhead);
+	long bytes = p.run(g2, scroll, FRAMES, overhead);
+	g2.dispose();
+	if (bytes <= p.allowance(style, polyline) * FRAMES) {
+	    return false;
+	}
+	System.out.printf("FAIL %s %s width=%d overscan=%d style=%d"
+			+ " incremental=%b: %.1f bytes/frame%n",
+			scroll ? "scroll" : "paint", chart, width, overscan,
+			style, incremental, (double) bytes / FRAMES);
+	return true;
+    }
+
+    /**
+     * Paint each kind of chart, and report any that allocate.
+     *
+     * @param args ignored
+     */
+    public static void main(final String[] args) {
+	if (!THREADS.isThreadAllocatedMemorySupported()) {
+	    System.err.println("Allocation counting isn't supported here");
+	    System.exit(2);
+	}
+	THREADS.setThreadAllocatedMemoryEnabled(true);
+	long overhead = overhead();
+	long polyline = polyline();
+	int failures = 0;
+	for (String chart : CHARTS) {
+	    // sparklines have no style, and neither they nor the renderer
+	    // draw incrementally
+	    int nstyles = "spark".equals(chart) ? 1 : 3;
+	    int nincs = "spark".equals(chart) || "renderer".equals(chart)
+		? 1 : 2;
+	    for (int width : WIDTHS) {
+		for (int overscan : OVERSCANS) {
+		    for (int style = 0; style < nstyles; style++) {
+			for (int inc = 0; inc < nincs; inc++) {
+			    if (allocates(chart, width, overscan, style,
+					inc == 1, false, overhead, polyline)) {
+				failures++;
+			    }
+			    if (allocates(chart, width, overscan, style,
+					inc == 1, true, overhead, polyline)) {
+				failures++;
+			    }
+			}
+		    }
+		}
+	    }
+	}
+	if (failures > 0) {
+	    System.out.println(failures + " paint paths allocate");
+	    System.exit(1);
+	}
+	System.out.println("No paint path allocates");
+    }
+}
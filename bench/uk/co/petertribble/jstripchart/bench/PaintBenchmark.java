@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of painting a chart into a BufferedImage, as the
+ * chart would be painted on screen. The paint benchmark repaints a chart
+ * whose data hasn't changed, and the scroll benchmark adds a data point
+ * before each paint, which is the usual case for a live chart and the
+ * one incremental rendering is for.
+ *
+ * An overscan of 1 gives one data point per pixel; larger values give
+ * the model more data points than the chart is wide, so the data has to
+ * be decimated. The style only applies to the strip charts, and
+ * incremental rendering only to the strip charts with an overscan of 1.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaintBenchmark {
+
+    /**
+     * The kind of chart painted, or renderer for a ChartRenderer drawing
+     * a strip chart.
+     */
+    @Param({"strip", "strip2", "stacked", "spark", "stripN", "renderer"})
+    public String chart;
+
+    /**
+     * The width of the chart, in pixels.
+     */
+    @Param({"100", "400", "1600"})
+    public int width;
+
+    /**
+     * The number of data points in the model for each pixel.
+     */
+    @Param({"1", "4"})
+    public int overscan;
+
+    /**
+     * The style, 0 for lines, 1 for solid, and 2 for connected lines.
+     */
+    @Param({"0", "1", "2"})
+    public int style;
+
+    /**
+     * Whether the chart is rendered incrementally.
+     */
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    /**
+     * The chart and its data.
+     */
+    private ChartFixture fixture;
+    /**
+     * The image painted into.
+     */
+    private BufferedImage image;
+    /**
+     * The graphics context of the image.
+     */
+    private Graphics2D g2;
+
+    /**
+     * Create the chart, fill it with data, and paint it once so any
+     * lazily created state exists.
+     */
+    @Setup
+    public void setup() {
+	fixture = new ChartFixture(chart, width, width * overscan, style,
+				incremental, true, false);
+	image = new BufferedImage(width, ChartFixture.HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+	g2 = image.createGraphics();
+	fixture.paint(g2);
+    }
+
+    /**
+     * Release the graphics context.
+     */
+    @TearDown
+    public void tearDown() {
+	g2.dispose();
+    }
+
+    /**
+     * Paint the chart with no new data.
+     *
+     * @return the image painted into
+     */
+    @Benchmark
+    public BufferedImage paint() {
+	fixture.paint(g2);
+	return image;
+    }
+
+    /**
+     * Add a data point and paint the chart.
+     *
+     * @return the image painted into
+     */
+    @Benchmark
+    public BufferedImage scroll() {
+	fixture.add();
+	fixture.paint(g2);
+	return image;
+    }
+}
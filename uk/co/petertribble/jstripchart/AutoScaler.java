@@ -0,0 +1,331 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import static uk.co.petertribble.jstripchart.JStripChart.AUTOSCALE_EXACT;
+import static uk.co.petertribble.jstripchart.JStripChart.AUTOSCALE_BINARY;
+
+/**
+ * Works out the vertical scale of a chart from the largest value in a
+ * sliding window of the most recent data, so the scale goes down as well
+ * as up as the data changes.
+ *
+ * The maximum is tracked with a monotonic deque: we keep the data points
+ * that could still become the maximum, in decreasing order of value, so
+ * the maximum is always at the head. Each data point is added and removed
+ * at most once, so adding one costs amortized O(1), however the data
+ * changes. The deque only holds the positions of the data points in the
+ * model's ring buffer, and the values are read back from the model, so
+ * it costs at most 4 bytes a data point whichever way the model stores
+ * its data. It only grows as far as it needs to, which for most data is a
+ * small fraction of the model.
+ *
+ * An AutoScaler follows a model, catching up with the data added since it
+ * last looked whenever it's asked for the scale, which is only done on
+ * the thread adding the data, as that's the only thread that may read the
+ * model's values directly. Other threads, such as a chart given a model
+ * on the event dispatch thread, work the scale out from a snapshot
+ * instead. A model keeps one of
+ * these for each number of series shown, shared by all the charts showing
+ * it, so the window is only tracked once however many charts there are.
+ *
+ * The scale may also be snapped to a nice round number. It then goes up
+ * as soon as the data needs it to, but only comes down once the data
+ * would fit comfortably under a smaller step, so that data hovering
+ * around a step doesn't keep changing the scale.
+ */
+final class AutoScaler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The scale only comes down to a smaller step once the largest value
+     * in the window is less than this fraction of that step.
+     */
+    private static final double HYSTERESIS = 0.8d;
+
+    /**
+     * The model we follow.
+     */
+    private final StripChartModel model;
+    /**
+     * How many series of the model we take the largest value of.
+     */
+    private final int nshow;
+    /**
+     * How many data points the window covers, which is the size of the
+     * model.
+     */
+    private final int window;
+    /**
+     * The positions in the model of the data points in the deque, in
+     * decreasing order of value from the head, grown as needed.
+     */
+    private int[] positions = new int[16];
+    /**
+     * The position of the head of the deque.
+     */
+    private int head;
+    /**
+     * How many data points are in the deque.
+     */
+    private int size;
+    /**
+     * The model's total when we last caught up with it, or -1 if we've
+     * yet to look.
+     */
+    private long nseen = -1L;
+    /**
+     * The model's cursor when we last caught up with it.
+     */
+    private int ncur;
+
+    /**
+     * Create a new AutoScaler that follows a model, tracking the largest
+     * value of the first few series over the whole of the model. Any data
+     * already in the model is picked up the first time we're asked for
+     * the scale.
+     *
+     * @param nmodel the StripChartModel to follow
+     * @param series the number of series to take the largest value of
+     */
+    AutoScaler(final StripChartModel nmodel, final int series) {
+	model = nmodel;
+	nshow = series;
+	window = model.getSize();
+    }
+
+    /*
+     * The value of the data point at the given position in the model.
+     */
+    private double value(final int pos) {
+	double d = model.getValue(0, pos);
+	for (int s = 1; s < nshow; s++) {
+	    d = Math.max(d, model.getValue(s, pos));
+	}
+	return d;
+    }
+
+    /*
+     * Add the data point at the given position. Anything older has
+     * already been dropped if it's left the window.
+     */
+    private void add(final int pos) {
+	double d = value(pos);
+	// anything smaller than the new value can never be the maximum again
+	while (size > 0 && value(positions[slot(size - 1)]) <= d) {
+	    size--;
+	}
+	if (size == positions.length) {
+	    // the window can't hold more than its size, so nor can we
+	    int[] npositions = new int[Math.min(size * 2, window)];
+	    for (int i = 0; i < size; i++) {
+		npositions[i] = positions[slot(i)];
+	    }
+	    positions = npositions;
+	    head = 0;
+	}
+	positions[slot(size)] = pos;
+	size++;
+    }
+
+    private int slot(final int i) {
+	int j = head + i;
+	return (j >= positions.length) ? j - positions.length : j;
+    }
+
+    /**
+     * Forget all the data points added so far.
+     */
+    void reset() {
+	head = 0;
+	size = 0;
+    }
+
+    /**
+     * Return the largest value in the window. We first catch up with the
+     * model, and the value is read back from it, so this may only be
+     * called from the thread adding data to the model.
+     *
+     * @return the largest value in the window, or zero if the window is
+     * empty
+     */
+    synchronized double getMax() {
+	follow();
+	return max();
+    }
+
+    private double max() {
+	return (size == 0) ? 0.0d : value(positions[head]);
+    }
+
+    /**
+     * Return the vertical scale to show the values in the window, worked
+     * out according to the given policy. If the scale is snapped to
+     * steps, it only goes down from the current scale once the values fit
+     * well inside a smaller step. We first catch up with the model, so
+     * like getMax() this may only be called from the thread adding data
+     * to the model. This is synchronized, as all the charts showing a
+     * model share its scaler.
+     *
+     * @param npolicy the autoscale policy, one of the AUTOSCALE constants
+     * defined by JStripChart
+     * @param current the scale the chart has now
+     *
+     * @return the vertical scale
+     */
+    synchronized double getScale(final int npolicy, final double current) {
+	follow();
+	return scale(npolicy, current, size == 0, max());
+    }
+
+    /**
+     * Return the vertical scale to show the data in the model now, as for
+     * getScale(), but worked out from a snapshot of the model without
+     * catching up with it, so this may be called from any thread. A chart
+     * uses this when it's given the model, and follows the model on the
+     * thread adding the data from then on.
+     *
+     * @param npolicy the autoscale policy, one of the AUTOSCALE constants
+     * defined by JStripChart
+     * @param current the scale the chart has now
+     *
+     * @return the vertical scale
+     */
+    double getSnapshotScale(final int npolicy, final double current) {
+	int nseries = model.getSeriesCount();
+	// the copy only lives until we've looked through it
+	double[] data = new double[window * nseries];
+	int n = (int) Math.min(model.snapshot(data), window);
+	double max = Double.NEGATIVE_INFINITY;
+	for (int i = 0; i < n; i++) {
+	    for (int s = 0; s < nshow; s++) {
+		max = Math.max(max, data[i * nseries + s]);
+	    }
+	}
+	return scale(npolicy, current, n == 0, max);
+    }
+
+    /*
+     * The vertical scale to show values up to the given maximum, worked
+     * out according to the policy from the current scale.
+     */
+    private static double scale(final int npolicy, final double current,
+		final boolean empty, final double max) {
+	if (npolicy == AUTOSCALE_EXACT) {
+	    return empty ? 1.0d : scaleFor(max);
+	}
+	double top = empty ? 0.0d : max;
+	double step = stepFor(top, npolicy);
+	// keep the current scale if it's a step that still fits
+	if (step <= current && stepFor(current, npolicy) == current
+		&& stepFor(top / HYSTERESIS, npolicy) >= current) {
+	    return current;
+	}
+	return step;
+    }
+
+    /*
+     * Add the data points added to the model since we last looked, oldest
+     * first, first dropping anything they push out of the window. If
+     * we've missed some, anything we saw before has gone.
+     */
+    private void follow() {
+	long total = model.getTotal();
+	int ncount = model.getCount();
+	int cur = model.getCursor();
+	long nnew = total - nseen;
+	if (nseen < 0 || nnew >= ncount) {
+	    reset();
+	    nnew = ncount;
+	} else {
+	    // the points that are about to be overwritten
+	    while (size > 0
+		   && Math.floorMod(ncur - positions[head], window) + nnew
+			>= window) {
+		head = slot(1);
+		size--;
+	    }
+	}
+	nseen = total;
+	ncur = cur;
+	int i = cur - (int) nnew + 1;
+	if (i < 0) {
+	    i += window;
+	}
+	for (long k = 0; k < nnew; k++) {
+	    add(i);
+	    i++;
+	    if (i == window) {
+		i = 0;
+	    }
+	}
+    }
+
+    /**
+     * Return the vertical scale to show values up to the given maximum.
+     *
+     * @param max the largest value to be shown
+     *
+     * @return the vertical scale
+     */
+    static double scaleFor(final double max) {
+	return Math.max(max, 0.0d) * 1.10001 + 0.00001;
+    }
+
+    /**
+     * Return the smallest step at least as large as the given maximum.
+     * Steps are 1, 2, or 5 times a power of ten for AUTOSCALE_DECIMAL,
+     * and powers of two for AUTOSCALE_BINARY; otherwise this is the same
+     * as scaleFor.
+     *
+     * @param max the largest value to be shown
+     * @param npolicy the autoscale policy, one of the AUTOSCALE constants
+     * defined by JStripChart
+     *
+     * @return the vertical scale
+     */
+    static double stepFor(final double max, final int npolicy) {
+	if (npolicy == AUTOSCALE_EXACT) {
+	    return scaleFor(max);
+	}
+	if (Double.isInfinite(max)) {
+	    return max;
+	}
+	if (!(max > 0.0d)) {
+	    return 1.0d;
+	}
+	if (npolicy == AUTOSCALE_BINARY) {
+	    double step = Math.scalb(1.0d, Math.getExponent(max));
+	    return (step < max) ? step * 2.0d : step;
+	}
+	double decade = Math.pow(10.0d, Math.floor(Math.log10(max)));
+	if (decade >= max) {
+	    return decade;
+	} else if (2.0d * decade >= max) {
+	    return 2.0d * decade;
+	} else if (5.0d * decade >= max) {
+	    return 5.0d * decade;
+	}
+	return 10.0d * decade;
+    }
+}
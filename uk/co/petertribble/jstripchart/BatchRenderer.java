@@ -0,0 +1,305 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws a large number of charts into one image, in parallel. The charts
+ * are split into small groups, and each group is drawn by a ChartRenderer
+ * into a scratch image belonging to the thread drawing it, with each
+ * chart copied into its own region of the output image. A thread keeps
+ * its scratch image for the rest of the batch, and they're all let go
+ * once the batch is done. As the
+ * regions don't overlap, the workers never need to wait for each other.
+ * The time taken by the last batch is recorded, so the throughput can be
+ * monitored.
+ */
+public final class BatchRenderer {
+
+    /**
+     * The most charts a task draws without splitting.
+     */
+    private static final int THRESHOLD = 16;
+
+    /**
+     * The pool the charts are drawn on.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The number of charts in the last batch.
+     */
+    private volatile int lastCount;
+    /**
+     * The time taken by the last batch, in nanoseconds.
+     */
+    private volatile long lastTime;
+
+    /**
+     * Create a new BatchRenderer, drawing on the common pool.
+     */
+    public BatchRenderer() {
+	this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new BatchRenderer, drawing on the given pool.
+     *
+     * @param npool the ForkJoinPool to draw the charts on
+     */
+    public BatchRenderer(final ForkJoinPool npool) {
+	pool = npool;
+    }
+
+    /**
+     * Draw the data in each model into its region of a new image, with
+     * the given background.
+     *
+     * @param renderer the ChartRenderer used to draw each chart
+     * @param models the StripChartModels holding the data
+     * @param regions the region of the image for each model
+     * @param width the width of the image
+     * @param height the height of the image
+     *
+     * @return a new BufferedImage holding the charts
+     */
+    public BufferedImage render(final ChartRenderer renderer,
+		final List<StripChartModel> models,
+		final List<Rectangle> regions, final int width,
+		final int height) {
+	BufferedImage image = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+	render(renderer, models, regions, image);
+	return image;
+    }
+
+    /**
+     * Draw the data in each model into its region of the given image.
+     * Each region must lie within the image, and the regions must not
+     * overlap. An empty region is left alone.
+     *
+     * @param renderer the ChartRenderer used to draw each chart
+     * @param models the StripChartModels holding the data
+     * @param regions the region of the image for each model
+     * @param image the BufferedImage to draw into, which must be of type
+     * TYPE_INT_RGB
+     *
+     * @throws IllegalArgumentException if the image is of the wrong type,
+     * there isn't a region for each model, or a region doesn't lie within
+     * the image
+     */
+    public void render(final ChartRenderer renderer,
+		final List<StripChartModel> models,
+		final List<Rectangle> regions, final BufferedImage image) {
+	if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+	    throw new IllegalArgumentException("Image must be TYPE_INT_RGB");
+	}
+	if (models.size() != regions.size()) {
+	    throw new IllegalArgumentException(
+		"Need a region for each model");
+	}
+	// check up front, rather than failing part way through on a worker
+	for (Rectangle r : regions) {
+	    if (r.width < 0 || r.height < 0 || r.x < 0 || r.y < 0
+		    || (long) r.x + r.width > image.getWidth()
+		    || (long) r.y + r.height > image.getHeight()) {
+		throw new IllegalArgumentException("Region " + r
+		    + " not within image of size " + image.getWidth() + "x"
+		    + image.getHeight());
+	    }
+	}
+	long start = System.nanoTime();
+	Map<Thread, Scratch> scratches = new ConcurrentHashMap<>();
+	try {
+	    pool.invoke(new DrawTask(renderer, models, regions, image,
+				scratches, 0, models.size()));
+	} finally {
+	    for (Scratch sc : scratches.values()) {
+		sc.dispose();
+	    }
+	}
+	lastTime = System.nanoTime() - start;
+	lastCount = models.size();
+    }
+
+    /**
+     * Return the number of charts drawn in the last batch.
+     *
+     * @return the number of charts drawn in the last batch
+     */
+    public int getLastCount() {
+	return lastCount;
+    }
+
+    /**
+     * Return the time taken to draw the last batch.
+     *
+     * @return the time taken to draw the last batch, in nanoseconds
+     */
+    public long getLastTime() {
+	return lastTime;
+    }
+
+    /**
+     * Return the rate at which the last batch was drawn.
+     *
+     * @return the number of charts drawn per second in the last batch
+     */
+    public double getThroughput() {
+	long t = lastTime;
+	return (t == 0L) ? 0.0d : lastCount * 1.0e9d / t;
+    }
+
+    /*
+     * Draws a range of the charts, splitting the range in half if it's
+     * too big.
+     */
+    private static final class DrawTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Draws each chart.
+	 */
+	private final transient ChartRenderer renderer;
+	/**
+	 * The models for all the charts.
+	 */
+	private final transient List<StripChartModel> models;
+	/**
+	 * The regions for all the charts.
+	 */
+	private final transient List<Rectangle> regions;
+	/**
+	 * The image the charts are copied into.
+	 */
+	private final transient BufferedImage image;
+	/**
+	 * The scratch image of each thread drawing this batch.
+	 */
+	private final transient Map<Thread, Scratch> scratches;
+	/**
+	 * The first chart to draw.
+	 */
+	private final int from;
+	/**
+	 * One after the last chart to draw.
+	 */
+	private final int to;
+
+	DrawTask(final ChartRenderer nrenderer,
+		final List<StripChartModel> nmodels,
+		final List<Rectangle> nregions, final BufferedImage nimage,
+		final Map<Thread, Scratch> nscratches, final int nfrom,
+		final int nto) {
+	    renderer = nrenderer;
+	    models = nmodels;
+	    regions = nregions;
+	    image = nimage;
+	    scratches = nscratches;
+	    from = nfrom;
+	    to = nto;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from <= THRESHOLD) {
+		// a thread only draws one group at a time, so can reuse its
+		// scratch image from one group to the next
+		Scratch sc = scratches.computeIfAbsent(Thread.currentThread(),
+						t -> new Scratch());
+		for (int i = from; i < to; i++) {
+		    sc.draw(renderer, models.get(i), regions.get(i), image);
+		}
+	    } else {
+		int mid = (from + to) >>> 1;
+		invokeAll(new DrawTask(renderer, models, regions, image,
+				scratches, from, mid),
+			new DrawTask(renderer, models, regions, image,
+				scratches, mid, to));
+	    }
+	}
+    }
+
+    /*
+     * The image a thread draws each chart into, grown as needed.
+     */
+    private static final class Scratch {
+
+	/**
+	 * The image charts are drawn into.
+	 */
+	private BufferedImage image;
+	/**
+	 * Used to draw into the image.
+	 */
+	private Graphics2D g2;
+	/**
+	 * Used to copy pixels out of the image.
+	 */
+	private int[] pixels;
+
+	/*
+	 * Draw a chart and copy it into its region of the output.
+	 */
+	private void draw(final ChartRenderer renderer,
+		final StripChartModel model, final Rectangle r,
+		final BufferedImage out) {
+	    if (r.isEmpty()) {
+		return;
+	    }
+	    if (image == null || image.getWidth() < r.width
+		    || image.getHeight() < r.height) {
+		if (g2 != null) {
+		    g2.dispose();
+		}
+		int w = Math.max(r.width, (image == null) ? 1
+				: image.getWidth());
+		int h = Math.max(r.height, (image == null) ? 1
+				: image.getHeight());
+		image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		g2 = image.createGraphics();
+		pixels = new int[w * h];
+	    }
+	    renderer.render(model, g2, r.width, r.height);
+	    image.getRaster().getDataElements(0, 0, r.width, r.height,
+					pixels);
+	    out.getRaster().setDataElements(r.x, r.y, r.width, r.height,
+					pixels);
+	}
+
+	/*
+	 * Let go of the drawing resources.
+	 */
+	private void dispose() {
+	    if (g2 != null) {
+		g2.dispose();
+	    }
+	}
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Component;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the work done by a chart: how much data it has been given, how
+ * often it has asked to be repainted and how often it actually was, how
+ * long painting took, how many data points were drawn, and how often the
+ * vertical scale changed. There is one ChartMetrics for each chart, and
+ * another holding the totals for all charts.
+ *
+ * Metrics are off by default, when the only cost to a chart is checking
+ * whether they're on. Turn them on with {@link #setEnabled(boolean)}, and
+ * either look at the counts directly, add a {@link ChartMetricsListener},
+ * or call {@link #registerMBean()} to see them over JMX.
+ */
+public final class ChartMetrics {
+
+    /**
+     * The name of the MBean showing the metrics for all charts.
+     */
+    public static final String OBJECT_NAME =
+	"uk.co.petertribble.jstripchart:type=ChartMetrics";
+
+    /**
+     * The number of buckets in the paint time histogram. Bucket 0 counts
+     * paints taking under a microsecond, bucket b those taking at least
+     * 2<sup>b-1</sup> and under 2<sup>b</sup> microseconds, and the last
+     * bucket everything longer.
+     */
+    public static final int NBUCKETS = 20;
+
+    /**
+     * Whether metrics are being collected.
+     */
+    private static volatile boolean enabled;
+
+    /**
+     * The totals for all charts.
+     */
+    private static final ChartMetrics TOTAL = new ChartMetrics(null, null);
+
+    /**
+     * The metrics for each chart. The metrics only hold a weak reference
+     * to their chart, so the chart can still be collected.
+     */
+    private static final Map<Component, ChartMetrics> CHARTS =
+	Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Told about everything that's counted.
+     */
+    private static final List<ChartMetricsListener> LISTENERS =
+	new CopyOnWriteArrayList<>();
+
+    /**
+     * The chart being counted, or null for the totals.
+     */
+    private final WeakReference<Component> chart;
+    /**
+     * The name shown for the chart.
+     */
+    private final String name;
+    /**
+     * The totals, also updated by everything counted here, or null if
+     * these are the totals.
+     */
+    private final ChartMetrics parent;
+
+    /**
+     * The number of data points added.
+     */
+    private final LongAdder samples = new LongAdder();
+    /**
+     * The number of times a repaint was asked for.
+     */
+    private final LongAdder requested = new LongAdder();
+    /**
+     * The number of times the chart was painted.
+     */
+    private final LongAdder performed = new LongAdder();
+    /**
+     * The total time spent painting, in nanoseconds.
+     */
+    private final LongAdder paintTime = new LongAdder();
+    /**
+     * The number of data points or columns drawn.
+     */
+    private final LongAdder points = new LongAdder();
+    /**
+     * The number of times the vertical scale changed.
+     */
+    private final LongAdder rescales = new LongAdder();
+    /**
+     * The number of paints in each bucket of the paint time histogram.
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(NBUCKETS);
+
+    private ChartMetrics(final Component c, final ChartMetrics nparent) {
+	chart = new WeakReference<>(c);
+	name = (c == null) ? "total"
+	    : c.getClass().getSimpleName() + "@"
+		+ Integer.toHexString(System.identityHashCode(c));
+	parent = nparent;
+    }
+
+    /**
+     * Return whether metrics are being collected.
+     *
+     * @return true if metrics are being collected
+     */
+    public static boolean isEnabled() {
+	return enabled;
+    }
+
+    /**
+     * Set whether metrics are collected. Turning metrics off keeps the
+     * counts so far, and turning them on again carries on from there.
+     *
+     * @param nenabled true if metrics should be collected
+     */
+    public static void setEnabled(final boolean nenabled) {
+	enabled = nenabled;
+    }
+
+    /**
+     * Return the totals for all charts.
+     *
+     * @return the ChartMetrics holding the totals
+     */
+    public static ChartMetrics getTotal() {
+	return TOTAL;
+    }
+
+    /**
+     * Return the metrics for every chart that has been counted and still
+     * exists.
+     *
+     * @return a List of the ChartMetrics of each chart
+     */
+    public static List<ChartMetrics> getCharts() {
+	synchronized (CHARTS) {
+	    return new ArrayList<>(CHARTS.values());
+	}
+    }
+
+    /**
+     * Return the metrics for a chart, creating them if necessary. Charts
+     * call this themselves, and return the result from their getMetrics
+     * method.
+     *
+     * @param c the chart
+     *
+     * @return the ChartMetrics for the chart
+     */
+    static ChartMetrics forChart(final Component c) {
+	return CHARTS.computeIfAbsent(c, k -> new ChartMetrics(k, TOTAL));
+    }
+
+    /**
+     * Add a listener to be told about everything counted, for all charts.
+     * Listeners are called on the thread doing the work, so must be quick.
+     *
+     * @param l the ChartMetricsListener to add
+     */
+    public static void addListener(final ChartMetricsListener l) {
+	LISTENERS.add(l);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param l the ChartMetricsListener to remove
+     */
+    public static void removeListener(final ChartMetricsListener l) {
+	LISTENERS.remove(l);
+    }
+
+    /**
+     * Register an MBean showing the metrics with the platform MBeanServer,
+     * under the name {@link #OBJECT_NAME}, if it isn't already there. This
+     * doesn't turn metrics on; that can be done through the MBean.
+     *
+     * @throws JMException if the MBean can't be registered
+     */
+    public static void registerMBean() throws JMException {
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	ObjectName oname = new ObjectName(OBJECT_NAME);
+	synchronized (TOTAL) {
+	    if (!server.isRegistered(oname)) {
+		server.registerMBean(new Management(), oname);
+	    }
+	}
+    }
+
+    /**
+     * Return the chart being counted.
+     *
+     * @return the chart, or null if these are the totals or the chart no
+     * longer exists
+     */
+    public Component getChart() {
+	return chart.get();
+    }
+
+    /**
+     * Return the name of the chart being counted, made from its class and
+     * identity hash code, or "total" for the totals.
+     *
+     * @return the name of the chart
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Return the number of data points added.
+     *
+     * @return the number of data points added
+     */
+    public long getSamplesIngested() {
+	return samples.sum();
+    }
+
+    /**
+     * Return the number of times a repaint was asked for because data was
+     * added. Repaints are coalesced, so this may be much larger than the
+     * number performed.
+     *
+     * @return the number of repaints asked for
+     */
+    public long getRepaintsRequested() {
+	return requested.sum();
+    }
+
+    /**
+     * Return the number of times the chart was painted, for whatever
+     * reason.
+     *
+     * @return the number of paints
+     */
+    public long getRepaintsPerformed() {
+	return performed.sum();
+    }
+
+    /**
+     * Return the total time spent painting.
+     *
+     * @return the time spent painting, in nanoseconds
+     */
+    public long getPaintTime() {
+	return paintTime.sum();
+    }
+
+    /**
+     * Return the number of data points drawn. When there's more data than
+     * pixels, this is the number of columns drawn.
+     *
+     * @return the number of data points drawn
+     */
+    public long getPointsDrawn() {
+	return points.sum();
+    }
+
+    /**
+     * Return the number of times the vertical scale changed.
+     *
+     * @return the number of rescales
+     */
+    public long getRescales() {
+	return rescales.sum();
+    }
+
+    /**
+     * Return the paint time histogram, as described for {@link #NBUCKETS}.
+     *
+     * @return the number of paints in each bucket
+     */
+    public long[] getPaintHistogram() {
+	long[] counts = new long[NBUCKETS];
+	for (int b = 0; b < NBUCKETS; b++) {
+	    counts[b] = histogram.get(b);
+	}
+	return counts;
+    }
+
+    /**
+     * Return the upper limit of a bucket of the paint time histogram.
+     *
+     * @param bucket the bucket
+     *
+     * @return the shortest paint time too long for the bucket, in
+     * nanoseconds, or Long.MAX_VALUE for the last bucket
+     */
+    public static long getBucketLimit(final int bucket) {
+	return (bucket >= NBUCKETS - 1) ? Long.MAX_VALUE
+	    : (1L << bucket) * 1000L;
+    }
+
+    /**
+     * Set all the counts to zero.
+     */
+    public void reset() {
+	samples.reset();
+	requested.reset();
+	performed.reset();
+	paintTime.reset();
+	points.reset();
+	rescales.reset();
+	for (int b = 0; b < NBUCKETS; b++) {
+	    histogram.set(b, 0L);
+	}
+    }
+
+    @Override
+    public String toString() {
+	long npaints = getRepaintsPerformed();
+	return name + ": samples=" + getSamplesIngested()
+	    + " requested=" + getRepaintsRequested()
+	    + " painted=" + npaints
+	    + " paintTime=" + getPaintTime() / 1000L + "us"
+	    + " meanPaint=" + ((npaints == 0) ? 0L
+				: getPaintTime() / npaints / 1000L) + "us"
+	    + " points=" + getPointsDrawn()
+	    + " rescales=" + getRescales();
+    }
+
+    /**
+     * Count data points added to the chart.
+     *
+     * @param n the number of data points added
+     */
+    void ingested(final long n) {
+	samples.add(n);
+	parent.samples.add(n);
+	for (ChartMetricsListener l : LISTENERS) {
+	    l.samplesIngested(this, n);
+	}
+    }
+
+    /**
+     * Count a request to repaint the chart.
+     */
+    void repaintRequested() {
+	requested.increment();
+	parent.requested.increment();
+	for (ChartMetricsListener l : LISTENERS) {
+	    l.repaintRequested(this);
+	}
+    }
+
+    /**
+     * Count a paint of the chart.
+     *
+     * @param nanos how long the paint took, in nanoseconds
+     * @param npoints how many data points were drawn
+     */
+    void painted(final long nanos, final int npoints) {
+	long us = nanos / 1000L;
+	int bucket = Math.min(64 - Long.numberOfLeadingZeros(us),
+			NBUCKETS - 1);
+	for (ChartMetrics m = this; m != null; m = m.parent) {
+	    m.performed.increment();
+	    m.paintTime.add(nanos);
+	    m.points.add(npoints);
+	    m.histogram.incrementAndGet(bucket);
+	}
+	for (ChartMetricsListener l : LISTENERS) {
+	    l.chartPainted(this, nanos, npoints);
+	}
+    }
+
+    /**
+     * Count a change of the vertical scale.
+     *
+     * @param oldmax the old top of the scale
+     * @param newmax the new top of the scale
+     */
+    void rescaled(final double oldmax, final double newmax) {
+	rescales.increment();
+	parent.rescales.increment();
+	for (ChartMetricsListener l : LISTENERS) {
+	    l.rescaled(this, oldmax, newmax);
+	}
+    }
+
+    /*
+     * The MBean, showing the totals and the charts that took longest to
+     * paint.
+     */
+    private static final class Management implements ChartMetricsMXBean {
+
+	@Override
+	public boolean isEnabled() {
+	    return ChartMetrics.isEnabled();
+	}
+
+	@Override
+	public void setEnabled(final boolean nenabled) {
+	    ChartMetrics.setEnabled(nenabled);
+	}
+
+	@Override
+	public int getChartCount() {
+	    return CHARTS.size();
+	}
+
+	@Override
+	public long getSamplesIngested() {
+	    return TOTAL.getSamplesIngested();
+	}
+
+	@Override
+	public long getRepaintsRequested() {
+	    return TOTAL.getRepaintsRequested();
+	}
+
+	@Override
+	public long getRepaintsPerformed() {
+	    return TOTAL.getRepaintsPerformed();
+	}
+
+	@Override
+	public long getPaintTime() {
+	    return TOTAL.getPaintTime();
+	}
+
+	@Override
+	public long getPointsDrawn() {
+	    return TOTAL.getPointsDrawn();
+	}
+
+	@Override
+	public long getRescales() {
+	    return TOTAL.getRescales();
+	}
+
+	@Override
+	public long[] getPaintHistogram() {
+	    return TOTAL.getPaintHistogram();
+	}
+
+	@Override
+	public String[] topCharts(final int n) {
+	    List<ChartMetrics> charts = getCharts();
+	    charts.sort((a, b) -> Long.compare(b.getPaintTime(),
+						a.getPaintTime()));
+	    int nshow = Math.min(Math.max(n, 0), charts.size());
+	    String[] lines = new String[nshow];
+	    for (int i = 0; i < nshow; i++) {
+		lines[i] = charts.get(i).toString();
+	    }
+	    return lines;
+	}
+
+	@Override
+	public void reset() {
+	    TOTAL.reset();
+	    for (ChartMetrics m : getCharts()) {
+		m.reset();
+	    }
+	}
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+import java.util.EventListener;
+
+/**
+ * Told about the work done by charts while metrics are enabled. Each
+ * method is called on the thread doing the work, which for painting is
+ * the event dispatch thread, so implementations must be quick. The
+ * methods do nothing by default, so implement just those of interest.
+ */
+public interface ChartMetricsListener extends EventListener {
+
+    /**
+     * Called when data is added to a chart.
+     *
+     * @param m the ChartMetrics of the chart
+     * @param n the number of data points added
+     */
+    default void samplesIngested(final ChartMetrics m, final long n) {
+    }
+
+    /**
+     * Called when a chart asks to be repainted because data was added.
+     *
+     * @param m the ChartMetrics of the chart
+     */
+    default void repaintRequested(final ChartMetrics m) {
+    }
+
+    /**
+     * Called when a chart has been painted.
+     *
+     * @param m the ChartMetrics of the chart
+     * @param nanos how long painting took, in nanoseconds
+     * @param npoints how many data points were drawn
+     */
+    default void chartPainted(final ChartMetrics m, final long nanos,
+			final int npoints) {
+    }
+
+    /**
+     * Called when the vertical scale of a chart changes.
+     *
+     * @param m the ChartMetrics of the chart
+     * @param oldmax the old top of the scale
+     * @param newmax the new top of the scale
+     */
+    default void rescaled(final ChartMetrics m, final double oldmax,
+			final double newmax) {
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+/**
+ * The management interface for chart metrics, registered by
+ * {@link ChartMetrics#registerMBean()}. The counts are the totals for all
+ * charts; the charts costing the most can be found with
+ * {@link #topCharts(int)}.
+ */
+public interface ChartMetricsMXBean {
+
+    /**
+     * Return whether metrics are being collected.
+     *
+     * @return true if metrics are being collected
+     */
+    boolean isEnabled();
+
+    /**
+     * Set whether metrics are collected.
+     *
+     * @param nenabled true if metrics should be collected
+     */
+    void setEnabled(boolean nenabled);
+
+    /**
+     * Return the number of charts that have been counted and still exist.
+     *
+     * @return the number of charts
+     */
+    int getChartCount();
+
+    /**
+     * Return the number of data points added to all charts.
+     *
+     * @return the number of data points added
+     */
+    long getSamplesIngested();
+
+    /**
+     * Return the number of times a repaint was asked for.
+     *
+     * @return the number of repaints asked for
+     */
+    long getRepaintsRequested();
+
+    /**
+     * Return the number of times a chart was painted.
+     *
+     * @return the number of paints
+     */
+    long getRepaintsPerformed();
+
+    /**
+     * Return the total time spent painting charts.
+     *
+     * @return the time spent painting, in nanoseconds
+     */
+    long getPaintTime();
+
+    /**
+     * Return the number of data points drawn.
+     *
+     * @return the number of data points drawn
+     */
+    long getPointsDrawn();
+
+    /**
+     * Return the number of times the vertical scale of a chart changed.
+     *
+     * @return the number of rescales
+     */
+    long getRescales();
+
+    /**
+     * Return the paint time histogram for all charts, as described in
+     * {@link ChartMetrics#NBUCKETS}.
+     *
+     * @return the number of paints in each bucket
+     */
+    long[] getPaintHistogram();
+
+    /**
+     * Describe the charts that have spent the most time painting.
+     *
+     * @param n the most charts to describe
+     *
+     * @return a description of each chart, the most costly first
+     */
+    String[] topCharts(int n);
+
+    /**
+     * Set all the counts to zero, for all charts.
+     */
+    void reset();
+}
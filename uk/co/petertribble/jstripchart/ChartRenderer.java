@@ -0,0 +1,576 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Stroke;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_SOLID;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_CONNECTED;
+
+/**
+ * Draws the data in a StripChartModel as a chart, without needing a
+ * component, so charts can be drawn into images on a server running
+ * headless. The charts look the same as those drawn by the chart
+ * components.
+ * <p>
+ * A renderer may be used by any number of threads at once. Each thread
+ * keeps its own working space, so once a thread has drawn a chart of a
+ * given size, drawing another doesn't allocate anything. The working
+ * space belongs to the renderer, so goes once the renderer is no longer
+ * used, and shrinks again if a thread moves on to much smaller charts.
+ */
+public final class ChartRenderer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Draw a strip chart, with the series drawn over each other, the
+     * first in front, as {@link JStripChartN} does.
+     */
+    public static final int TYPE_STRIP = 0;
+    /**
+     * Draw a strip chart, with the series stacked on top of each other,
+     * the first at the bottom, as {@link JStackedStripChartN} does.
+     */
+    public static final int TYPE_STACKED = 1;
+    /**
+     * Draw a sparkline of the first series, as {@link JSparkChart} does.
+     */
+    public static final int TYPE_SPARK = 2;
+
+    /**
+     * The Stroke used to draw sparklines.
+     */
+    private static final BasicStroke STROKE = new BasicStroke(1.0f,
+			BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+    /**
+     * Working space arrays are only shrunk if they're larger than needed
+     * by more than this, so similar charts don't keep replacing them.
+     */
+    private static final int SLACK = 4096;
+
+    /**
+     * The type of chart drawn.
+     */
+    private final int type;
+    /**
+     * The background color.
+     */
+    private final Color bgcolor;
+    /**
+     * The foreground colors, one for each series drawn.
+     */
+    private final Color[] fgcolors;
+    /**
+     * The current style.
+     */
+    private volatile int style;
+    /**
+     * Whether we autoscale.
+     */
+    private volatile boolean autoscale = true;
+    /**
+     * How the scale is chosen when we autoscale.
+     */
+    private volatile int policy;
+    /**
+     * Vertical range, if not autoscaling.
+     */
+    private volatile double dmax = 1.0d;
+    /**
+     * The working space for each thread drawing with this renderer,
+     * created when first needed.
+     */
+    private transient volatile ThreadLocal<Scratch> scratch;
+
+    /**
+     * Create a new ChartRenderer, drawing one series for each foreground
+     * colour. A sparkline only uses the first foreground colour.
+     *
+     * @param ntype The type of chart to draw, one of TYPE_STRIP,
+     * TYPE_STACKED, or TYPE_SPARK
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolors The Colors to be used for the data series
+     */
+    public ChartRenderer(final int ntype, final Color nbcolor,
+			final Color... nfcolors) {
+	type = ntype;
+	bgcolor = nbcolor;
+	fgcolors = nfcolors.clone();
+    }
+
+    /**
+     * Set the line style to be used for strip charts.
+     *
+     * @param nstyle The line style to be used
+     */
+    public void setStyle(final int nstyle) {
+	style = nstyle;
+    }
+
+    /**
+     * Set how the vertical scale is chosen when autoscaling. With
+     * AUTOSCALE_DECIMAL or AUTOSCALE_BINARY, the scale snaps to round
+     * numbers, so charts of similar data are drawn to the same scale.
+     * Each chart is drawn on its own, so there's no hysteresis.
+     *
+     * @param npolicy the autoscale policy to be used
+     */
+    public void setAutoscalePolicy(final int npolicy) {
+	policy = npolicy;
+    }
+
+    /**
+     * Set the maximum scale. Also forces the vertical scale to be fixed
+     * rather than worked out from the data each time a chart is drawn.
+     *
+     * @param ndmax The required maximum value to be shown
+     */
+    public void setMax(final double ndmax) {
+	dmax = ndmax;
+	autoscale = false;
+    }
+
+    /**
+     * Draw the data in a model into a new image.
+     *
+     * @param model the StripChartModel holding the data
+     * @param width the width of the image
+     * @param height the height of the image
+     *
+     * @return a new BufferedImage holding the chart
+     */
+    public BufferedImage render(final StripChartModel model, final int width,
+			final int height) {
+	BufferedImage image = new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_RGB);
+	render(model, image);
+	return image;
+    }
+
+    /**
+     * Draw the data in a model, filling the given image.
+     *
+     * @param model the StripChartModel holding the data
+     * @param image the BufferedImage to draw into
+     */
+    public void render(final StripChartModel model,
+			final BufferedImage image) {
+	Graphics2D g2 = image.createGraphics();
+	try {
+	    render(model, g2, image.getWidth(), image.getHeight());
+	} finally {
+	    g2.dispose();
+	}
+    }
+
+    /**
+     * Draw the data in a model as a PNG image.
+     *
+     * @param model the StripChartModel holding the data
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param out the stream to write the PNG image to
+     *
+     * @throws IOException if the image can't be written
+     */
+    public void writePNG(final StripChartModel model, final int width,
+		final int height, final OutputStream out) throws IOException {
+	if (!ImageIO.write(render(model, width, height), "png", out)) {
+	    throw new IOException("No PNG writer available");
+	}
+    }
+
+    /**
+     * Draw the data in a model, in the area of the given size at the
+     * origin of a Graphics2D. The paint and stroke of the Graphics2D are
+     * put back as they were afterwards.
+     *
+     * @param model the StripChartModel holding the data
+     * @param g2 the Graphics2D to draw on
+     * @param iw the width of the chart
+     * @param ih the height of the chart
+     */
+    public void render(final StripChartModel model, final Graphics2D g2,
+			final int iw, final int ih) {
+	Paint paint = g2.getPaint();
+	Stroke stroke = g2.getStroke();
+	try {
+	    draw(model, g2, iw, ih);
+	} finally {
+	    g2.setPaint(paint);
+	    g2.setStroke(stroke);
+	}
+    }
+
+    /*
+     * Return this thread's working space. If two threads both create the
+     * ThreadLocal, one is lost, which only costs the space it held.
+     */
+    private Scratch scratch() {
+	ThreadLocal<Scratch> tl = scratch;
+	if (tl == null) {
+	    tl = ThreadLocal.withInitial(Scratch::new);
+	    scratch = tl;
+	}
+	return tl.get();
+    }
+
+    private void draw(final StripChartModel model, final Graphics2D g2,
+		final int iw, final int ih) {
+	Scratch sc = scratch();
+	int nsize = model.getSize();
+	int nseries = model.getSeriesCount();
+	int nshow = (type == TYPE_SPARK) ? 1
+	    : Math.min(fgcolors.length, nseries);
+	double[] data = sc.prepare(nsize * nseries, nshow);
+	long total = model.snapshot(data);
+	int n = (int) Math.min(total, nsize);
+	int nstyle = style;
+	double scale = autoscale ? autoScale(data, nseries, nshow, n) : dmax;
+
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, iw, ih);
+	if (n == 0) {
+	    return;
+	}
+	if (iw > 0 && nsize > iw) {
+	    // more data than pixels, so reduce the data to fit
+	    sc.envelope(data, nseries, nshow, n, total, nsize, iw,
+			type == TYPE_STACKED);
+	    if (type == TYPE_SPARK) {
+		paintSparkDecimated(g2, sc, iw, ih, scale);
+	    } else {
+		paintDecimated(g2, sc, nshow, iw, ih, scale, nstyle);
+	    }
+	} else if (type == TYPE_SPARK) {
+	    paintSpark(g2, sc, data, nseries, n, nsize, iw, ih, scale);
+	} else {
+	    paintColumns(g2, sc, data, nseries, nshow, n, nsize, iw, ih,
+			scale, nstyle);
+	}
+    }
+
+    /*
+     * Work out the vertical scale from the largest value, or total for
+     * stacked charts.
+     */
+    private double autoScale(final double[] data, final int nseries,
+		final int nshow, final int n) {
+	if (n == 0) {
+	    return 1.0d;
+	}
+	double max = Double.NEGATIVE_INFINITY;
+	for (int i = 0; i < n; i++) {
+	    int base = i * nseries;
+	    double d = 0.0d;
+	    for (int s = 0; s < nshow; s++) {
+		d = (type == TYPE_STACKED) ? d + data[base + s]
+		    : (s == 0) ? data[base] : Math.max(d, data[base + s]);
+	    }
+	    max = Math.max(max, d);
+	}
+	return AutoScaler.stepFor(max, policy);
+    }
+
+    /*
+     * Draw a strip chart with a column for each data point.
+     */
+    private void paintColumns(final Graphics2D g2, final Scratch sc,
+		final double[] data, final int nseries, final int nshow,
+		final int n, final int nsize, final int iw, final int ih,
+		final double scale, final int nstyle) {
+	double w = iw;
+	double h = ih;
+	double x = w;
+	double dx = w / ((double) nsize);
+	int last = nshow - 1;
+	ColumnFiller filler = sc.filler;
+	filler.setColumnWidth(dx);
+	if (nstyle == STYLE_CONNECTED) {
+	    LinePainter liner = sc.liner;
+	    liner.setGeometry(w, h, nsize, scale);
+	    liner.setCumulative(type == TYPE_STACKED);
+	    for (int s = last; s >= 0; s--) {
+		g2.setPaint(fgcolors[s]);
+		liner.draw(g2, data, nseries, s, 0, n);
+	    }
+	    return;
+	}
+	SolidPainter solid = sc.solid;
+	if (nstyle == STYLE_SOLID) {
+	    solid.begin(nshow, n, h);
+	}
+	for (int i = n - 1; i >= 0; i--) {
+	    x -= dx;
+	    int base = i * nseries;
+	    if (type == TYPE_STACKED) {
+		double top = 0.0d;
+		for (int s = 0; s <= last; s++) {
+		    top += h * data[base + s] / scale;
+		    sc.tops[s] = top;
+		}
+	    }
+	    if (nstyle == STYLE_SOLID) {
+		solid.column(x, dx);
+	    }
+	    // paint the last series first, so the first is in front
+	    for (int s = last; s >= 0; s--) {
+		double y = (type == TYPE_STACKED) ? sc.tops[s]
+		    : h * data[base + s] / scale;
+		if (nstyle == STYLE_SOLID) {
+		    solid.top(s, h - y);
+		} else {
+		    g2.setPaint(fgcolors[s]);
+		    filler.fill(g2, x, h - y, dx, dx);
+		}
+	    }
+	}
+	if (nstyle == STYLE_SOLID) {
+	    paintSolid(g2, solid, last);
+	}
+    }
+
+    /*
+     * Fill each series once their tops have been built, the last series
+     * first so the first is in front. For a strip chart, then draw a line
+     * where the hidden series are.
+     */
+    private void paintSolid(final Graphics2D g2, final SolidPainter solid,
+		final int last) {
+	for (int s = last; s >= 0; s--) {
+	    g2.setPaint(fgcolors[s]);
+	    solid.fill(g2, s);
+	}
+	if (type == TYPE_STRIP) {
+	    for (int s = last; s > 0; s--) {
+		g2.setPaint(fgcolors[s]);
+		solid.outline(g2, s);
+	    }
+	}
+    }
+
+    /*
+     * Draw a strip chart one pixel column at a time, from the envelope.
+     */
+    private void paintDecimated(final Graphics2D g2, final Scratch sc,
+		final int nshow, final int iw, final int ih,
+		final double scale, final int nstyle) {
+	double h = ih;
+	int last = nshow - 1;
+	if (nstyle == STYLE_SOLID) {
+	    SolidPainter solid = sc.solid;
+	    solid.begin(nshow, iw, h);
+	    for (int age = 0; age < iw; age++) {
+		int slot = age * nshow;
+		boolean empty = sc.maxs[slot] < sc.mins[slot];
+		solid.column(iw - age - 1.0, 1.0);
+		for (int s = last; s >= 0; s--) {
+		    solid.top(s, empty ? h
+			: h - h * sc.maxs[slot + s] / scale);
+		}
+	    }
+	    paintSolid(g2, solid, last);
+	    return;
+	}
+	ColumnFiller filler = sc.filler;
+	filler.setColumnWidth(1.0);
+	for (int age = 0; age < iw; age++) {
+	    int slot = age * nshow;
+	    if (sc.maxs[slot] < sc.mins[slot]) {
+		continue;
+	    }
+	    double x = iw - age - 1.0;
+	    // cover the range from the minimum to the maximum
+	    for (int s = last; s >= 0; s--) {
+		double hh = h * sc.maxs[slot + s] / scale;
+		double dh = Math.max(hh - h * sc.mins[slot + s] / scale, 0.0)
+		    + 1.0;
+		g2.setPaint(fgcolors[s]);
+		filler.fill(g2, x, h - hh, 1.0, dh);
+	    }
+	}
+    }
+
+    /*
+     * Draw a sparkline through every data point.
+     */
+    private void paintSpark(final Graphics2D g2, final Scratch sc,
+		final double[] data, final int nseries, final int n,
+		final int nsize, final int iw, final int ih,
+		final double scale) {
+	double hmax = ih - 1.0d;
+	double hrange = ih - 2.0d;
+	double x = iw;
+	double dx = x / ((double) nsize);
+	GeneralPath path = sc.path;
+	path.reset();
+	path.moveTo((float) x,
+		(float) (hmax - hrange * data[(n - 1) * nseries] / scale));
+	for (int i = n - 2; i >= 0; i--) {
+	    x -= dx;
+	    double hh = hmax - hrange * data[i * nseries] / scale;
+	    path.lineTo((float) x, (float) hh);
+	}
+	g2.setPaint(fgcolors[0]);
+	g2.setStroke(STROKE);
+	g2.draw(path);
+    }
+
+    /*
+     * Draw a sparkline one pixel column at a time, from the envelope.
+     */
+    private void paintSparkDecimated(final Graphics2D g2, final Scratch sc,
+		final int iw, final int ih, final double scale) {
+	double hmax = ih - 1.0d;
+	double hrange = ih - 2.0d;
+	GeneralPath path = sc.path;
+	path.reset();
+	boolean started = false;
+	for (int age = 0; age < iw; age++) {
+	    if (sc.maxs[age] < sc.mins[age]) {
+		continue;
+	    }
+	    float x = (float) (iw - age);
+	    float ytop = (float) (hmax - hrange * sc.maxs[age] / scale);
+	    if (started) {
+		path.lineTo(x, ytop);
+	    } else {
+		path.moveTo(x, ytop);
+		started = true;
+	    }
+	    // a vertical line covering the range of this column
+	    path.lineTo(x, (float) (hmax - hrange * sc.mins[age] / scale));
+	}
+	if (started) {
+	    g2.setPaint(fgcolors[0]);
+	    g2.setStroke(STROKE);
+	    g2.draw(path);
+	}
+    }
+
+    /*
+     * Return an array of at least the given length, reusing the given
+     * array unless it's too short or far too long.
+     */
+    private static double[] fit(final double[] a, final int len) {
+	return (a.length < len || a.length > 2 * len + SLACK)
+	    ? new double[len] : a;
+    }
+
+    /*
+     * The working space for one thread, grown and shrunk as needed.
+     */
+    private static final class Scratch {
+
+	/**
+	 * The snapshot of the data.
+	 */
+	private double[] data = new double[0];
+	/**
+	 * The minimum of each series in each column, newest first.
+	 */
+	private double[] mins = new double[0];
+	/**
+	 * The maximum of each series in each column, newest first.
+	 */
+	private double[] maxs = new double[0];
+	/**
+	 * The top of each band of a stacked chart.
+	 */
+	private double[] tops = new double[0];
+	/**
+	 * Fills the columns.
+	 */
+	private final ColumnFiller filler = new ColumnFiller();
+	/**
+	 * Draws connected lines.
+	 */
+	private final LinePainter liner = new LinePainter();
+	/**
+	 * Fills solid charts.
+	 */
+	private final SolidPainter solid = new SolidPainter();
+	/**
+	 * Holds the sparkline.
+	 */
+	private final GeneralPath path = new GeneralPath();
+
+	/*
+	 * Make sure we have room for a snapshot of the given length, and
+	 * for the given number of series, returning the snapshot array.
+	 */
+	private double[] prepare(final int len, final int nshow) {
+	    data = fit(data, len);
+	    if (tops.length < nshow) {
+		tops = new double[nshow];
+	    }
+	    return data;
+	}
+
+	/*
+	 * Work out the range of the data in each column, with columns
+	 * aligned to the total number of points ever added, as the charts
+	 * do, so a chart doesn't shimmer as data is added.
+	 */
+	private void envelope(final double[] snap, final int nseries,
+		final int nshow, final int n, final long total,
+		final int size, final int columns, final boolean cumulative) {
+	    int len = columns * nshow;
+	    mins = fit(mins, len);
+	    maxs = fit(maxs, len);
+	    Arrays.fill(mins, 0, len, Double.POSITIVE_INFINITY);
+	    Arrays.fill(maxs, 0, len, Double.NEGATIVE_INFINITY);
+	    long first = total - n;
+	    long newest = ColumnEnvelope.column(total - 1, size, columns);
+	    for (int i = 0; i < n; i++) {
+		long age = newest
+		    - ColumnEnvelope.column(first + i, size, columns);
+		if (age >= columns) {
+		    continue;
+		}
+		int slot = (int) age * nshow;
+		int base = i * nseries;
+		double v = 0.0d;
+		for (int c = 0; c < nshow; c++) {
+		    v = cumulative ? v + snap[base + c] : snap[base + c];
+		    if (v < mins[slot + c]) {
+			mins[slot + c] = v;
+		    }
+		    if (v > maxs[slot + c]) {
+			maxs[slot + c] = v;
+		    }
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The saved state of a chart: its data, and how it's scaled and drawn.
+ * The state is written in a compact, versioned, binary form, much smaller
+ * and quicker to read and write than serializing a chart. Each state is
+ * self-contained, so the states of many charts may be written one after
+ * another to the same channel, and read back in the same order.
+ *
+ * The data is saved oldest first, so a restored model holds the same
+ * data as the original, although the position of its ring buffer may
+ * differ. A state may hold at most 16M values, the number of series
+ * times the size of the model.
+ */
+public final class ChartState {
+
+    /**
+     * Identifies a saved state, "JSCS".
+     */
+    private static final int MAGIC = 0x4a534353;
+    /**
+     * The version of the format written.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The size of the fixed part of a saved state.
+     */
+    private static final int HEADER = 52;
+    /**
+     * The size of the magic number and version that start a saved state.
+     */
+    private static final int PREAMBLE = 8;
+    /**
+     * The most values a saved state can hold, which also bounds the model
+     * a damaged state can have us allocate before any data is read.
+     */
+    private static final int MAX_VALUES = 1 << 24;
+    /**
+     * The number of values read from a channel at a time.
+     */
+    private static final int CHUNK = 8192;
+
+    /**
+     * The model holding the data.
+     */
+    private final StripChartModel model;
+    /**
+     * The style of the chart.
+     */
+    private final int style;
+    /**
+     * Whether the chart autoscales.
+     */
+    private final boolean autoscale;
+    /**
+     * The autoscale policy of the chart.
+     */
+    private final int policy;
+    /**
+     * The vertical scale of the chart.
+     */
+    private final double dmax;
+
+    /**
+     * Create a new ChartState, for a chart that autoscales exactly.
+     *
+     * @param nmodel the model holding the data
+     * @param nstyle the style of the chart
+     * @param nautoscale whether the chart autoscales
+     * @param ndmax the vertical scale of the chart
+     */
+    public ChartState(final StripChartModel nmodel, final int nstyle,
+		final boolean nautoscale, final double ndmax) {
+	this(nmodel, nstyle, nautoscale, JStripChart.AUTOSCALE_EXACT, ndmax);
+    }
+
+    /**
+     * Create a new ChartState.
+     *
+     * @param nmodel the model holding the data
+     * @param nstyle the style of the chart
+     * @param nautoscale whether the chart autoscales
+     * @param npolicy the autoscale policy of the chart, one of the
+     * AUTOSCALE constants defined by JStripChart
+     * @param ndmax the vertical scale of the chart
+     */
+    public ChartState(final StripChartModel nmodel, final int nstyle,
+		final boolean nautoscale, final int npolicy,
+		final double ndmax) {
+	model = nmodel;
+	style = nstyle;
+	autoscale = nautoscale;
+	policy = npolicy;
+	dmax = ndmax;
+    }
+
+    /**
+     * Return the model holding the data.
+     *
+     * @return the StripChartModel holding the data
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Return the style of the chart.
+     *
+     * @return the style of the chart
+     */
+    public int getStyle() {
+	return style;
+    }
+
+    /**
+     * Return whether the chart autoscales.
+     *
+     * @return true if the chart autoscales
+     */
+    public boolean isAutoscale() {
+	return autoscale;
+    }
+
+    /**
+     * Return the autoscale policy of the chart.
+     *
+     * @return the autoscale policy, one of the AUTOSCALE constants defined
+     * by JStripChart
+     */
+    public int getPolicy() {
+	return policy;
+    }
+
+    /**
+     * Return the vertical scale of the chart.
+     *
+     * @return the vertical scale of the chart
+     */
+    public double getMax() {
+	return dmax;
+    }
+
+    /**
+     * Write this state to a channel. The data is taken from a consistent
+     * snapshot of the model, so this may be called from any thread.
+     *
+     * @param ch the channel to write to
+     *
+     * @throws IOException if the state can't be written, or the model
+     * holds more than 16M values
+     */
+    public void write(final WritableByteChannel ch) throws IOException {
+	int nseries = model.getSeriesCount();
+	int nsize = model.getSize();
+	if ((long) nseries * nsize > MAX_VALUES) {
+	    throw new IOException("Chart state too large: " + nseries
+				+ " series of " + nsize + " points");
+	}
+	double[] data = new double[nsize * nseries];
+	long total = model.snapshot(data);
+	int count = (int) Math.min(total, nsize);
+	ByteBuffer hdr = ByteBuffer.allocate(HEADER);
+	hdr.putInt(MAGIC).putInt(VERSION);
+	hdr.putInt(nseries).putInt(nsize).putInt(model.getStorage());
+	hdr.putInt(count).putLong(total);
+	hdr.putInt(style).putInt(autoscale ? 1 : 0).putDouble(dmax);
+	hdr.putInt(policy);
+	hdr.flip();
+	writeFully(ch, hdr);
+	// write the data a chunk at a time, as it's read
+	int nvalues = count * nseries;
+	ByteBuffer buf = ByteBuffer.allocate(8 * Math.min(nvalues, CHUNK));
+	for (int done = 0; done < nvalues; done += CHUNK) {
+	    int len = Math.min(nvalues - done, CHUNK);
+	    buf.clear();
+	    buf.asDoubleBuffer().put(data, done, len);
+	    buf.limit(8 * len);
+	    writeFully(ch, buf);
+	}
+    }
+
+    /*
+     * Write all of a buffer.
+     */
+    private static void writeFully(final WritableByteChannel ch,
+		final ByteBuffer buf) throws IOException {
+	while (buf.hasRemaining()) {
+	    ch.write(buf);
+	}
+    }
+
+    /**
+     * Read a state from a channel, creating a new model to hold the data.
+     * The data is read a chunk at a time, so that a damaged or truncated
+     * state is reported before much memory is used.
+     *
+     * @param ch the channel to read from
+     *
+     * @return the ChartState read
+     *
+     * @throws IOException if a valid state can't be read
+     */
+    public static ChartState read(final ReadableByteChannel ch)
+		throws IOException {
+	ByteBuffer pre = readFully(ch, PREAMBLE);
+	if (pre.getInt() != MAGIC) {
+	    throw new IOException("Not a saved chart state");
+	}
+	int version = pre.getInt();
+	if (version != VERSION) {
+	    throw new IOException("Unsupported chart state version "
+				+ version);
+	}
+	ByteBuffer hdr = readFully(ch, HEADER - PREAMBLE);
+	int nseries = hdr.getInt();
+	int nsize = hdr.getInt();
+	int storage = hdr.getInt();
+	int count = hdr.getInt();
+	long total = hdr.getLong();
+	int nstyle = hdr.getInt();
+	boolean nautoscale = hdr.getInt() != 0;
+	double ndmax = hdr.getDouble();
+	int npolicy = hdr.getInt();
+	if (nseries <= 0 || nsize <= 0 || count < 0 || count > nsize
+		|| total < count || storage < StripChartModel.STORAGE_DOUBLE
+		|| storage > StripChartModel.STORAGE_SHORT
+		|| npolicy < JStripChart.AUTOSCALE_EXACT
+		|| npolicy > JStripChart.AUTOSCALE_BINARY
+		|| nstyle < JStripChart.STYLE_LINE
+		|| nstyle > JStripChart.STYLE_CONNECTED
+		|| !(ndmax > 0.0d) || Double.isInfinite(ndmax)) {
+	    throw new IOException("Invalid chart state");
+	}
+	if ((long) nseries * nsize > MAX_VALUES) {
+	    throw new IOException("Chart state too large: " + nseries
+				+ " series of " + nsize + " points");
+	}
+	int nvalues = count * nseries;
+	if (ch instanceof SeekableByteChannel) {
+	    SeekableByteChannel sch = (SeekableByteChannel) ch;
+	    if (sch.size() - sch.position() < 8L * nvalues) {
+		throw new EOFException("Truncated chart state");
+	    }
+	}
+	double[] data = readData(ch, nvalues);
+	StripChartModel nmodel = new StripChartModel(nseries, nsize, storage);
+	nmodel.restore(data, count, total);
+	return new ChartState(nmodel, nstyle, nautoscale, npolicy, ndmax);
+    }
+
+    /*
+     * Read the given number of values, a chunk at a time, only growing the
+     * array as the values actually arrive.
+     */
+    private static double[] readData(final ReadableByteChannel ch,
+		final int n) throws IOException {
+	double[] data = new double[Math.min(n, CHUNK)];
+	int done = 0;
+	while (done < n) {
+	    int len = Math.min(n - done, CHUNK);
+	    if (done + len > data.length) {
+		data = Arrays.copyOf(data,
+			(int) Math.min(n, 2L * data.length));
+	    }
+	    readFully(ch, 8 * len).asDoubleBuffer().get(data, done, len);
+	    done += len;
+	}
+	return data;
+    }
+
+    /*
+     * Read exactly the given number of bytes.
+     */
+    private static ByteBuffer readFully(final ReadableByteChannel ch,
+		final int len) throws IOException {
+	ByteBuffer buf = ByteBuffer.allocate(len);
+	while (buf.hasRemaining()) {
+	    if (ch.read(buf) < 0) {
+		throw new EOFException("Truncated chart state");
+	    }
+	}
+	buf.flip();
+	return buf;
+    }
+}
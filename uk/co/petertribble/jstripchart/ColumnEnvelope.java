@@ -0,0 +1,289 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the data in a model to a given number of columns, for when the
+ * model holds more data points than the chart is wide. Each column holds
+ * the minimum and maximum of the data points that fall in it, so spikes
+ * still show.
+ *
+ * Column c covers the data points from c * size / columns up to
+ * (c + 1) * size / columns, counting the points ever added, so the columns
+ * always span the full width, and once a column is complete it never
+ * changes.
+ * Each update only needs to fetch and fold in the data added since the
+ * last one, so the cost depends on the number of columns rather than the
+ * size of the model.
+ */
+final class ColumnEnvelope {
+
+    /**
+     * How many values we track for each column.
+     */
+    private final int nchannels;
+
+    /**
+     * The model we were last updated from.
+     */
+    private StripChartModel model;
+    /**
+     * The number of columns.
+     */
+    private int ncols;
+    /**
+     * The number of data points in the model.
+     */
+    private int nsize;
+    /**
+     * The minimum values, for column slot s and channel c at index
+     * s * nchannels + c. Columns are stored in a ring.
+     */
+    private double[] mins;
+    /**
+     * The maximum values, stored the same way as the minimum values.
+     */
+    private double[] maxs;
+    /**
+     * The number of the newest column.
+     */
+    private long nbucket;
+    /**
+     * The number of data points folded in, or -1 if we need to start over.
+     */
+    private long nseen = -1;
+    /**
+     * Holds the data fetched from the model.
+     */
+    private double[] scratch;
+
+    /**
+     * Create a new ColumnEnvelope.
+     *
+     * @param channels the number of values to track for each column
+     */
+    ColumnEnvelope(final int channels) {
+	nchannels = channels;
+    }
+
+    /**
+     * Return the column a data point falls in, when a model of the given
+     * size is shown in the given number of columns.
+     *
+     * @param index the number of the data point, counting all the points
+     * ever added
+     * @param size the number of data points in the model
+     * @param columns the number of columns
+     *
+     * @return the number of the column holding the data point
+     */
+    static long column(final long index, final int size, final int columns) {
+	return index * columns / size;
+    }
+
+    /*
+     * The first data point in a column, which may be negative for columns
+     * before the start of the data.
+     */
+    private static long columnStart(final long c, final int size,
+		final int columns) {
+	return Math.floorDiv(c * size + columns - 1, (long) columns);
+    }
+
+    /**
+     * Bring the columns up to date with the model.
+     *
+     * @param nmodel the StripChartModel holding the data
+     * @param columns the number of columns wanted
+     */
+    void update(final StripChartModel nmodel, final int columns) {
+	int size = nmodel.getSize();
+	int nseries = nmodel.getSeriesCount();
+	if (nmodel != model || columns != ncols || size != nsize) {
+	    model = nmodel;
+	    ncols = columns;
+	    nsize = size;
+	    mins = new double[ncols * nchannels];
+	    maxs = new double[ncols * nchannels];
+	    nseen = -1;
+	}
+	int window = nsize;
+	long want = (nseen < 0) ? window
+	    : Math.min(model.getTotal() - nseen, window);
+	long got;
+	long first;
+	while (true) {
+	    // only hold as much as we fetch, which is usually a few points
+	    if (scratch == null || scratch.length < want * nseries) {
+		scratch = new double[(int) want * nseries];
+	    }
+	    got = model.snapshot(scratch, (int) want);
+	    first = got - Math.min(Math.min(got, nsize), want);
+	    // more data may have arrived since we asked
+	    if (nseen < 0 || first <= nseen || want >= window) {
+		break;
+	    }
+	    want = Math.min(got - nseen, window);
+	}
+	if (nseen < 0 || first > nseen) {
+	    // start again from what we have
+	    Arrays.fill(mins, Double.POSITIVE_INFINITY);
+	    Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+	    nbucket = column(first, nsize, ncols) - 1;
+	    nseen = first;
+	}
+	for (long j = nseen; j < got; j++) {
+	    long b = column(j, nsize, ncols);
+	    if (b > nbucket) {
+		long nclear = Math.min(b - nbucket, ncols);
+		for (long k = 0; k < nclear; k++) {
+		    int slot = (int) Math.floorMod(b - k, (long) ncols)
+			* nchannels;
+		    for (int c = 0; c < nchannels; c++) {
+			mins[slot + c] = Double.POSITIVE_INFINITY;
+			maxs[slot + c] = Double.NEGATIVE_INFINITY;
+		    }
+		}
+		nbucket = b;
+	    }
+	    int slot = (int) (b % ncols) * nchannels;
+	    int base = (int) (j - first) * nseries;
+	    for (int c = 0; c < nchannels; c++) {
+		double v = scratch[base + c];
+		if (v < mins[slot + c]) {
+		    mins[slot + c] = v;
+		}
+		if (v > maxs[slot + c]) {
+		    maxs[slot + c] = v;
+		}
+	    }
+	}
+	nseen = got;
+    }
+
+    private int slot(final int age) {
+	return (int) Math.floorMod(nbucket - age, (long) ncols) * nchannels;
+    }
+
+    /**
+     * Return whether a column has no data.
+     *
+     * @param age the column, counting back from 0 for the newest
+     *
+     * @return true if the column has no data
+     */
+    boolean isEmpty(final int age) {
+	return maxs[slot(age)] < mins[slot(age)];
+    }
+
+    /**
+     * Return the minimum value in a column.
+     *
+     * @param channel the channel
+     * @param age the column, counting back from 0 for the newest
+     *
+     * @return the minimum value in the column
+     */
+    double getMin(final int channel, final int age) {
+	return mins[slot(age) + channel];
+    }
+
+    /**
+     * Return the maximum value in a column.
+     *
+     * @param channel the channel
+     * @param age the column, counting back from 0 for the newest
+     *
+     * @return the maximum value in the column
+     */
+    double getMax(final int channel, final int age) {
+	return maxs[slot(age) + channel];
+    }
+
+    /**
+     * Pick one representative data point for each column using the
+     * Largest-Triangle-Three-Buckets algorithm, which keeps the visual
+     * shape of the data better than simple averaging. This works on a
+     * full snapshot, so costs time proportional to the number of data
+     * points rather than the number of columns. The columns are laid out
+     * across the full capacity of the model as for {@link #update}, so a
+     * model that isn't yet full only fills the newest columns.
+     *
+     * @param data the snapshot of the data, oldest first
+     * @param stride the number of series in the snapshot
+     * @param n the number of data points in the snapshot
+     * @param size the number of data points the model can hold, which
+     * must be at least the number of columns
+     * @param out where to store the chosen value for each column, counting
+     * back from 0 for the newest
+     *
+     * @return the number of columns filled in
+     */
+    static int lttb(final double[] data, final int stride, final int n,
+		final int size, final double[] out) {
+	if (n == 0) {
+	    return 0;
+	}
+	int ncols = out.length;
+	// the data fills the window from position off onwards
+	int off = size - n;
+	int oldest = (int) column(off, size, ncols);
+	int columns = ncols - oldest;
+	// the column of age a holds the points from start(a) up to start(a - 1)
+	int prev = 0;
+	out[columns - 1] = data[0];
+	for (int a = columns - 2; a > 0; a--) {
+	    int c = ncols - 1 - a;
+	    int start = (int) columnStart(c, size, ncols) - off;
+	    int end = (int) columnStart(c + 1, size, ncols) - off;
+	    int next = (int) columnStart(c + 2, size, ncols) - off;
+	    // average of the next (newer) column
+	    double xavg = 0.0d;
+	    double yavg = 0.0d;
+	    for (int i = end; i < next; i++) {
+		xavg += i;
+		yavg += data[i * stride];
+	    }
+	    xavg /= next - end;
+	    yavg /= next - end;
+	    double yprev = data[prev * stride];
+	    double best = -1.0d;
+	    int chosen = start;
+	    for (int i = start; i < end; i++) {
+		double y = data[i * stride];
+		double area = Math.abs((prev - xavg) * (y - yprev)
+				- (prev - i) * (yavg - yprev));
+		if (area > best) {
+		    best = area;
+		    chosen = i;
+		}
+	    }
+	    out[a] = data[chosen * stride];
+	    prev = chosen;
+	}
+	if (columns > 1) {
+	    out[0] = data[(n - 1) * stride];
+	}
+	return columns;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Fills the rectangles that make up the columns of a strip chart, without
+ * allocating anything. If the columns are a whole number of pixels wide
+ * then integer coordinates are used, otherwise a single Rectangle2D is
+ * reused for every column.
+ */
+final class ColumnFiller {
+
+    private final Rectangle2D.Double rect = new Rectangle2D.Double();
+
+    /**
+     * Whether the columns start on whole pixels.
+     */
+    private boolean integral;
+
+    /**
+     * Set the width of the columns about to be filled.
+     *
+     * @param dx the width of a column
+     */
+    void setColumnWidth(final double dx) {
+	integral = dx == Math.rint(dx);
+    }
+
+    /**
+     * Fill a rectangle.
+     *
+     * @param g2 the Graphics2D to fill on
+     * @param x the left edge of the rectangle
+     * @param y the top edge of the rectangle
+     * @param cw the width of the rectangle
+     * @param ch the height of the rectangle
+     */
+    void fill(final Graphics2D g2, final double x, final double y,
+		final double cw, final double ch) {
+	if (integral) {
+	    int x0 = toPixel(x);
+	    int y0 = toPixel(y);
+	    g2.fillRect(x0, y0, toPixel(x + cw) - x0, toPixel(y + ch) - y0);
+	} else {
+	    rect.setRect(x, y, cw, ch);
+	    g2.fill(rect);
+	}
+    }
+
+    /**
+     * Round a coordinate the same way that the default stroke
+     * normalization does when filling a shape, so we fill exactly the
+     * same pixels as filling a Rectangle2D would.
+     *
+     * @param v the coordinate
+     *
+     * @return the pixel boundary the coordinate rounds to
+     */
+    static int toPixel(final double v) {
+	return (int) Math.floor(v + 0.25);
+    }
+}
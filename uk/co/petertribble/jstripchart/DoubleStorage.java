@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+/**
+ * Stores values as doubles, exactly as given.
+ */
+final class DoubleStorage implements Storage, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The values.
+     */
+    private final double[] data;
+
+    /**
+     * Create a new DoubleStorage.
+     *
+     * @param n the number of values to hold
+     */
+    DoubleStorage(final int n) {
+	data = new double[n];
+    }
+
+    @Override
+    public double get(final int i) {
+	return data[i];
+    }
+
+    @Override
+    public void set(final int i, final double v) {
+	data[i] = v;
+    }
+
+    @Override
+    public void get(final int i, final double[] dest, final int off,
+		final int len) {
+	System.arraycopy(data, i, dest, off, len);
+    }
+
+    @Override
+    public void set(final int i, final double[] src, final int off,
+		final int len) {
+	System.arraycopy(src, off, data, i, len);
+    }
+
+    @Override
+    public void set(final int i, final DoubleBuffer src, final int len) {
+	src.get(data, i, len);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+/**
+ * Stores values as floats, using half the memory of doubles. This keeps
+ * about 7 significant digits, which is plenty to draw a chart.
+ */
+final class FloatStorage implements Storage, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The values.
+     */
+    private final float[] data;
+
+    /**
+     * Create a new FloatStorage.
+     *
+     * @param n the number of values to hold
+     */
+    FloatStorage(final int n) {
+	data = new float[n];
+    }
+
+    @Override
+    public double get(final int i) {
+	return data[i];
+    }
+
+    @Override
+    public void set(final int i, final double v) {
+	data[i] = (float) v;
+    }
+
+    @Override
+    public void get(final int i, final double[] dest, final int off,
+		final int len) {
+	for (int j = 0; j < len; j++) {
+	    dest[off + j] = data[i + j];
+	}
+    }
+
+    @Override
+    public void get(final int i, final float[] dest, final int off,
+		final int len) {
+	System.arraycopy(data, i, dest, off, len);
+    }
+
+    @Override
+    public void set(final int i, final double[] src, final int off,
+		final int len) {
+	for (int j = 0; j < len; j++) {
+	    data[i + j] = (float) src[off + j];
+	}
+    }
+
+    @Override
+    public void set(final int i, final DoubleBuffer src, final int len) {
+	for (int j = 0; j < len; j++) {
+	    set(i + j, src.get());
+	}
+    }
+}
@@ -26,10 +26,17 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Rectangle2D;
 import java.awt.geom.GeneralPath;
+import java.nio.DoubleBuffer;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_WIDTH;
 import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_HEIGHT;
+import static uk.co.petertribble.jstripchart.JStripChart.DECIMATE_LTTB;
 
 /**
  * A panel that shows a sparkline chart.
@@ -39,38 +46,70 @@ public final class JSparkChart extends JPanel {
     private static final long serialVersionUID = 1L;
 
     /**
-     * How many points we save.
+     * The Stroke used to draw the sparkline.
      */
-    private int nsize;
+    private static final BasicStroke STROKE = new BasicStroke(1.0f,
+			BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
     /**
-     * The current position of the data.
+     * Whether we autoscale.
      */
-    private int ncur = -1;
+    private volatile boolean autoscale = true;
     /**
-     * The index of the largest element.
+     * How the scale is chosen when we autoscale.
      */
-    private int nmax;
+    private volatile int policy;
+
     /**
-     * Whether we autoscale.
+     * The model holding the values to display.
      */
-    private boolean autoscale = true;
+    private volatile StripChartModel model;
     /**
-     * Whether we have wrapped.
+     * Listens for changes to the model, replaced along with the model.
      */
-    private boolean wrapped;
-
+    private volatile ModelListener listener;
     /**
-     * The values to display.
-     *
-     * We work with doubles, which is what Rectangle2D wants. We can display
-     * long or int, but they're cast to double internally.
+     * A copy of the model data, taken each time we paint decimated.
      */
-    private double[] values;
-
+    private transient double[] snapshot;
+    /**
+     * A copy of the model data and where each value is drawn, brought up
+     * to date each time we paint.
+     */
+    private transient PixelCache pixels;
+    /**
+     * The path used to draw the sparkline, reused each time we paint.
+     */
+    private transient GeneralPath path;
+    /**
+     * How we reduce the data if there's more than will fit.
+     */
+    private int decimation;
+    /**
+     * Summarizes the data by column, created when first needed.
+     */
+    private transient ColumnEnvelope envelope;
+    /**
+     * The values chosen for each column when using LTTB.
+     */
+    private transient double[] lttb;
+    /**
+     * Whether we repaint as soon as data arrives.
+     */
+    private volatile boolean immediate;
     /**
      * Vertical range (always measured from zero).
      */
-    private double dmax;
+    private volatile double dmax;
+
+    /**
+     * Counts what this chart does, created when first needed.
+     */
+    private transient volatile ChartMetrics metrics;
+    /**
+     * The number of data points drawn by the current paint.
+     */
+    private transient int ndrawn;
 
     /**
      * The background color.
@@ -80,10 +119,6 @@ public final class JSparkChart extends JPanel {
      * The foreground color.
      */
     private Color fgcolor;
-    /**
-     * The Stroke used to draw the sparkline.
-     */
-    private transient BasicStroke stroke;
 
     /**
      * Create an empty sparkline chart.
@@ -122,15 +157,126 @@ public final class JSparkChart extends JPanel {
      */
     public JSparkChart(final int width, final int height, final Color nbcolor,
 			final Color nfcolor) {
+	this(new StripChartModel(width), width, height, nbcolor, nfcolor);
+    }
+
+    /**
+     * Create a sparkline chart of the specified size and colours, showing
+     * the data held in the given model.
+     *
+     * @param nmodel The StripChartModel holding the data to be shown
+     * @param width The desired width of the sparkline chart
+     * @param height The desired height of the sparkline chart
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolor The Color to be used for the chart foreground
+     */
+    public JSparkChart(final StripChartModel nmodel, final int width,
+			final int height, final Color nbcolor,
+			final Color nfcolor) {
 	bgcolor = nbcolor;
 	fgcolor = nfcolor;
 	setMinimumSize(new Dimension(width, height));
 	setPreferredSize(new Dimension(width, height));
-	nsize = width;
-	values = new double[nsize];
 	dmax = 1.0;
-	stroke = new BasicStroke(1.0f, BasicStroke.CAP_ROUND,
-				BasicStroke.JOIN_ROUND);
+	setModel(nmodel);
+    }
+
+    /**
+     * Return the model holding the data shown by this chart.
+     *
+     * @return the StripChartModel of this chart
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Return the metrics counting the work done by this chart. These are
+     * only collected while {@link ChartMetrics#isEnabled()} is true.
+     *
+     * @return the ChartMetrics for this chart
+     */
+    public ChartMetrics getMetrics() {
+	ChartMetrics m = metrics;
+	if (m == null) {
+	    m = ChartMetrics.forChart(this);
+	    metrics = m;
+	}
+	return m;
+    }
+
+    /**
+     * Set the model holding the data shown by this chart. The model may be
+     * shared with other charts. This may be called while data is being
+     * added to the old or the new model from another thread.
+     *
+     * @param nmodel the new StripChartModel for this chart
+     */
+    public void setModel(final StripChartModel nmodel) {
+	if (listener != null) {
+	    model.removeChangeListener(listener);
+	}
+	ModelListener nlistener = new ModelListener(nmodel,
+					nmodel.getScaler(1));
+	model = nmodel;
+	listener = nlistener;
+	// a model kept in a file remembers a fixed scale it was shown with
+	double saved = nmodel.getSavedMax();
+	if (!Double.isNaN(saved)) {
+	    dmax = saved;
+	    autoscale = false;
+	}
+	// pick up the scale from a snapshot, as we're not on the writer thread
+	if (autoscale) {
+	    setScale(nlistener.scaler.getSnapshotScale(policy, dmax));
+	}
+	if (pixels != null) {
+	    pixels.invalidate();
+	}
+	nmodel.addChangeListener(nlistener);
+	repaint();
+    }
+
+    /**
+     * Set whether the chart is repainted as soon as data is added. By
+     * default, repaints are coalesced by the shared RepaintScheduler, so
+     * the chart is repainted at most once per frame.
+     *
+     * @param nimmediate true if the chart should be repainted immediately
+     */
+    public void setImmediateRepaint(final boolean nimmediate) {
+	immediate = nimmediate;
+    }
+
+    /**
+     * Set how the data is reduced when the model holds more data points
+     * than the chart is wide. The default, {@code DECIMATE_MINMAX}, shows
+     * the range of the data in each column, so spikes are never lost and
+     * only new data needs to be processed on each repaint.
+     * {@code DECIMATE_LTTB} picks one representative data point for each
+     * column, which looks more like the original data but processes all
+     * the data on every repaint.
+     *
+     * @param ndecimation the decimation mode to be used
+     */
+    public void setDecimation(final int ndecimation) {
+	decimation = ndecimation;
+	repaint();
+    }
+
+    /**
+     * Set how the vertical scale is chosen when autoscaling. By default,
+     * with AUTOSCALE_EXACT, the scale is set just above the largest
+     * value shown, so changes whenever that does. With AUTOSCALE_DECIMAL
+     * or AUTOSCALE_BINARY, the scale snaps to round numbers, and only
+     * comes down once the data fit well under a smaller step, so it
+     * changes rarely. The new policy takes effect when data is next
+     * added.
+     *
+     * @param npolicy the autoscale policy to be used
+     */
+    public void setAutoscalePolicy(final int npolicy) {
+	policy = npolicy;
     }
 
     /**
@@ -156,12 +302,15 @@ public final class JSparkChart extends JPanel {
     /**
      * Set the maximum scale. Also forces the vertical scale to be fixed
      * rather than dynamically adjusting to the data.
+     * If the model is kept in a file, the scale is saved there too, and
+     * picked up by a chart given the model after a restart.
      *
      * @param ndmax The required maximum value to be shown
      */
     public void setMax(final double ndmax) {
 	dmax = ndmax;
 	autoscale = false;
+	model.setSavedMax(ndmax);
     }
 
     /**
@@ -188,85 +337,273 @@ public final class JSparkChart extends JPanel {
      * @param d the data point to add
      */
     public void add(final double d) {
-	ncur++;
-	if (ncur == nsize) {
-	    // wrap back to the beginning
-	    ncur = 0;
-	    wrapped = true;
-	}
-	values[ncur] = d;
-	if (autoscale) {
-	    if (dmax < d * 1.1) {
-		// fudge a little extra for rounding
-		dmax = d * 1.10001;
-		nmax = ncur;
-	    } else if (nmax == ncur) {
-		// we replace the old maximum, so recalculate
-		resetMax();
-	    }
+	model.add(d);
+    }
+
+    /**
+     * Add an array of data points to the sparkline chart, oldest first. The
+     * chart is rescaled and repainted once, after all the data is added.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the first data point
+     * @param len the number of data points to add
+     */
+    public void add(final double[] src, final int off, final int len) {
+	model.add(src, off, len);
+    }
+
+    /**
+     * Add all the remaining data points in a buffer to the sparkline chart,
+     * oldest first. The chart is rescaled and repainted once, after all the
+     * data is added.
+     *
+     * @param buf the buffer containing the data to add
+     */
+    public void add(final DoubleBuffer buf) {
+	model.add(buf);
+    }
+
+    /**
+     * Save the data and scale of this chart to a channel.
+     *
+     * @param ch the channel to write to
+     *
+     * @throws IOException if the state can't be written
+     *
+     * @see ChartState
+     */
+    public void saveState(final WritableByteChannel ch) throws IOException {
+	new ChartState(model, 0, autoscale, policy, dmax).write(ch);
+    }
+
+    /**
+     * Restore the data and scale of this chart from a channel, as saved
+     * by saveState(). The chart is given a new model holding the
+     * saved data.
+     *
+     * @param ch the channel to read from
+     *
+     * @throws IOException if a valid state can't be read
+     */
+    public void restoreState(final ReadableByteChannel ch)
+		throws IOException {
+	ChartState state = ChartState.read(ch);
+	autoscale = state.isAutoscale();
+	policy = state.getPolicy();
+	if (!autoscale) {
+	    dmax = state.getMax();
 	}
-	repaint();
+	setModel(state.getModel());
     }
 
-    private void resetMax() {
-	dmax = values[0];
-	nmax = 0;
-	for (int i = 1; i < nsize; i++) {
-	    if (values[i] > dmax) {
-		dmax = values[i];
-		nmax = i;
-	    }
+    /*
+     * Set the vertical range worked out from the data, counting the change
+     * if it's different.
+     */
+    private void setScale(final double ndmax) {
+	if (ndmax != dmax && ChartMetrics.isEnabled()) {
+	    getMetrics().rescaled(dmax, ndmax);
 	}
-	dmax *= 1.10001;
-	/*
-	 * Ugh. This avoids setting dmax to zero.
-	 */
-	dmax += 0.00001;
+	dmax = ndmax;
     }
 
     @Override
     public void paint(final Graphics g) {
-	Graphics2D g2 = (Graphics2D) g;
-	Dimension d = getSize();
+	if (ChartMetrics.isEnabled()) {
+	    long start = System.nanoTime();
+	    ndrawn = 0;
+	    paintChart((Graphics2D) g);
+	    getMetrics().painted(System.nanoTime() - start, ndrawn);
+	} else {
+	    paintChart((Graphics2D) g);
+	}
+    }
+
+    /*
+     * Paint the chart, keeping count of the data points drawn.
+     */
+    private void paintChart(final Graphics2D g2) {
+	// the scale may be changed by another thread at any time, so read
+	// it once and use it for the whole paint
+	double scale = dmax;
+	int iw = getWidth();
+	int ih = getHeight();
 
-	double h = d.height;
+	double h = ih;
 	double hmax = h - 1.0d;
 	double hrange = h - 2.0d;
-	double w = d.width;
+	double w = iw;
 	g2.setPaint(bgcolor);
-	g2.fill(new Rectangle2D.Double(0.0d, 0.0d, w, h));
+	g2.fillRect(0, 0, iw, ih);
 
+	int nsize = model.getSize();
+	if (iw > 0 && nsize > iw) {
+	    // more data than pixels, so reduce the data to fit
+	    paintDecimated(g2, iw, hmax, hrange, scale);
+	    return;
+	}
+	int nseries = model.getSeriesCount();
+	if (pixels == null) {
+	    pixels = new PixelCache();
+	}
+	int n = (int) Math.min(pixels.update(model, hmax, hrange, scale),
+			nsize);
+	if (n == 0) {
+	    return;
+	}
+	float[] ys = pixels.getPixels();
+	ndrawn += n;
 	double x = w;
 	double dx = w / ((double) nsize);
 
 	g2.setPaint(fgcolor);
-	g2.setStroke(stroke);
+	g2.setStroke(STROKE);
 
 	// FIXME allow a little border
 
-	GeneralPath path = new GeneralPath();
+	if (path == null) {
+	    path = new GeneralPath(GeneralPath.WIND_NON_ZERO, nsize);
+	}
+	path.reset();
 	/*
 	 * increment x, use current values as y
-	 * start at the right, work our way back through the array
-	 * from the current position
+	 * start at the right, work our way back through the data
+	 * from the most recent value
 	 */
-	path.moveTo((float) x, (float) (hmax - hrange * values[ncur] / dmax));
-	for (int i = ncur - 1; i >= 0; i--) {
+	path.moveTo((float) x, ys[(n - 1) * nseries]);
+	for (int i = n - 2; i >= 0; i--) {
 	    x -= dx;
-	    double hh = hmax - hrange * values[i] / dmax;
-	    path.lineTo((float) x, (float) hh);
+	    path.lineTo((float) x, ys[i * nseries]);
+	}
+	g2.draw(path);
+    }
+
+    /*
+     * Draw the sparkline one pixel column at a time, when there are more
+     * data points than pixels.
+     */
+    private void paintDecimated(final Graphics2D g2, final int iw,
+		final double hmax, final double hrange,
+		final double scale) {
+	g2.setPaint(fgcolor);
+	g2.setStroke(STROKE);
+	if (path == null) {
+	    path = new GeneralPath(GeneralPath.WIND_NON_ZERO, 2 * iw);
+	}
+	path.reset();
+	boolean started = false;
+	if (decimation == DECIMATE_LTTB) {
+	    int nsize = model.getSize();
+	    int nseries = model.getSeriesCount();
+	    if (snapshot == null || snapshot.length != nsize * nseries) {
+		snapshot = new double[nsize * nseries];
+	    }
+	    if (lttb == null || lttb.length != iw) {
+		lttb = new double[iw];
+	    }
+	    int n = (int) Math.min(model.snapshot(snapshot), nsize);
+	    int ncols = ColumnEnvelope.lttb(snapshot, nseries, n, nsize,
+			lttb);
+	    ndrawn += ncols;
+	    for (int age = 0; age < ncols; age++) {
+		float x = (float) (iw - age);
+		float y = (float) (hmax - hrange * lttb[age] / scale);
+		if (started) {
+		    path.lineTo(x, y);
+		} else {
+		    path.moveTo(x, y);
+		    started = true;
+		}
+	    }
+	} else {
+	    if (envelope == null) {
+		envelope = new ColumnEnvelope(1);
+	    }
+	    envelope.update(model, iw);
+	    ndrawn += iw;
+	    for (int age = 0; age < iw; age++) {
+		if (envelope.isEmpty(age)) {
+		    continue;
+		}
+		float x = (float) (iw - age);
+		float ytop = (float) (hmax - hrange * envelope.getMax(0, age)
+					/ scale);
+		if (started) {
+		    path.lineTo(x, ytop);
+		} else {
+		    path.moveTo(x, ytop);
+		    started = true;
+		}
+		// a vertical line covering the range of this column
+		path.lineTo(x, (float) (hmax - hrange * envelope.getMin(0, age)
+					/ scale));
+	    }
+	}
+	if (started) {
+	    g2.draw(path);
+	}
+    }
+
+    /*
+     * Update the chart when data is added to the model. Each model we're
+     * given gets a new listener, which only uses that model and its
+     * scaler, so a listener still running when setModel swaps the model
+     * never mixes the old and the new.
+     */
+    private final class ModelListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The model we listen to.
+	 */
+	private final StripChartModel lmodel;
+	/**
+	 * Works out the vertical range from the data.
+	 */
+	private final AutoScaler scaler;
+	/**
+	 * The total number of data points in the model when we last looked.
+	 */
+	private long nseen;
+
+	ModelListener(final StripChartModel nmodel,
+		final AutoScaler nscaler) {
+	    lmodel = nmodel;
+	    scaler = nscaler;
+	    nseen = nmodel.getTotal();
 	}
+
 	/*
-	 * Now go from the end of the array back to the current position, but
-	 * only if the data has wrapped around.
+	 * Called when data is added to the model. The scale follows the
+	 * largest value currently held by the model, unless the chart has
+	 * moved on to another model.
+	 * Returns the number of data points added since we last looked.
 	 */
-	if (wrapped) {
-	    for (int i = nsize - 1; i > ncur; i--) {
-		x -= dx;
-		double hh = hmax - hrange * values[i] / dmax;
-		path.lineTo((float) x, (float) hh);
+	private long updateScale() {
+	    long total = lmodel.getTotal();
+	    long nadded = total - nseen;
+	    nseen = total;
+	    if (autoscale && listener == this) {
+		setScale(scaler.getScale(policy, dmax));
+	    }
+	    return nadded;
+	}
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    long nnew = updateScale();
+	    if (ChartMetrics.isEnabled()) {
+		ChartMetrics m = getMetrics();
+		m.ingested(nnew);
+		m.repaintRequested();
+	    }
+	    if (immediate) {
+		repaint();
+	    } else {
+		RepaintScheduler.getDefault().markDirty(JSparkChart.this);
 	    }
 	}
-	g2.draw(path);
     }
 }
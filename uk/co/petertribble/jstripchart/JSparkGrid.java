@@ -0,0 +1,324 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import javax.swing.JPanel;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A panel that shows a grid of sparklines, each showing the data from its
+ * own model. This is a single component however many sparklines there
+ * are, so is much cheaper than a JSparkChart for each one. The grid is
+ * kept in an offscreen image, and when data arrives only the sparklines
+ * whose data has changed are redrawn, and only their part of the screen
+ * is repainted.
+ */
+public final class JSparkGrid extends JPanel
+	implements RepaintScheduler.PartialRepaint {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of sparklines in each row.
+     */
+    private final int ncolumns;
+    /**
+     * The width of each sparkline.
+     */
+    private final int cellWidth;
+    /**
+     * The height of each sparkline.
+     */
+    private final int cellHeight;
+    /**
+     * The background color.
+     */
+    private final Color bgcolor;
+    /**
+     * Draws each sparkline.
+     */
+    private final ChartRenderer renderer;
+    /**
+     * The sparklines, in order.
+     */
+    private final List<Cell> cells = new ArrayList<>();
+    /**
+     * The offscreen image, in device pixels.
+     */
+    private transient BufferedImage image;
+
+    /**
+     * Create an empty sparkline grid.
+     *
+     * @param columns The number of sparklines in each row
+     * @param width The width of each sparkline
+     * @param height The height of each sparkline
+     */
+    public JSparkGrid(final int columns, final int width, final int height) {
+	this(columns, width, height, Color.BLUE, Color.RED);
+    }
+
+    /**
+     * Create an empty sparkline grid of the specified colours.
+     *
+     * @param columns The number of sparklines in each row
+     * @param width The width of each sparkline
+     * @param height The height of each sparkline
+     * @param nbcolor The Color to be used for the background
+     * @param nfcolor The Color to be used for the sparklines
+     */
+    public JSparkGrid(final int columns, final int width, final int height,
+			final Color nbcolor, final Color nfcolor) {
+	ncolumns = columns;
+	cellWidth = width;
+	cellHeight = height;
+	bgcolor = nbcolor;
+	renderer = new ChartRenderer(ChartRenderer.TYPE_SPARK, nbcolor,
+				nfcolor);
+	setBackground(bgcolor);
+	updateSize();
+    }
+
+    /**
+     * Add a sparkline to the end of the grid, showing the data held in the
+     * given model.
+     *
+     * @param model The StripChartModel holding the data to be shown
+     *
+     * @return the index of the new sparkline
+     */
+    public int addModel(final StripChartModel model) {
+	Cell cell = new Cell(model);
+	cells.add(cell);
+	model.addChangeListener(cell);
+	updateSize();
+	repaint();
+	return cells.size() - 1;
+    }
+
+    /**
+     * Change the model shown by a sparkline.
+     *
+     * @param index The index of the sparkline
+     * @param model The StripChartModel holding the data to be shown
+     */
+    public void setModel(final int index, final StripChartModel model) {
+	Cell old = cells.get(index);
+	old.model.removeChangeListener(old);
+	Cell cell = new Cell(model);
+	cells.set(index, cell);
+	model.addChangeListener(cell);
+	repaintCell(index);
+    }
+
+    /**
+     * Remove a sparkline from the grid, so it no longer follows its
+     * model. The sparklines after it move up to fill the gap.
+     *
+     * @param index The index of the sparkline
+     *
+     * @return the StripChartModel the sparkline showed
+     */
+    public StripChartModel removeModel(final int index) {
+	Cell old = cells.remove(index);
+	old.model.removeChangeListener(old);
+	// everything from here on has moved, so start again
+	image = null;
+	updateSize();
+	repaint();
+	return old.model;
+    }
+
+    /**
+     * Return the model shown by a sparkline.
+     *
+     * @param index The index of the sparkline
+     *
+     * @return the StripChartModel shown by the sparkline
+     */
+    public StripChartModel getModel(final int index) {
+	return cells.get(index).model;
+    }
+
+    /**
+     * Return the number of sparklines in the grid.
+     *
+     * @return the number of sparklines
+     */
+    public int getModelCount() {
+	return cells.size();
+    }
+
+    /**
+     * Return the index of the sparkline at the given point, for example
+     * to show a tooltip.
+     *
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     *
+     * @return the index of the sparkline, or -1 if there isn't one at the
+     * given point
+     */
+    public int indexAt(final int x, final int y) {
+	if (x < 0 || y < 0 || x >= ncolumns * cellWidth) {
+	    return -1;
+	}
+	int index = (y / cellHeight) * ncolumns + x / cellWidth;
+	return (index < cells.size()) ? index : -1;
+    }
+
+    /**
+     * Set the maximum scale of all the sparklines. Also forces the
+     * vertical scale to be fixed rather than dynamically adjusting to the
+     * data.
+     *
+     * @param ndmax The required maximum value to be shown
+     */
+    public void setMax(final double ndmax) {
+	renderer.setMax(ndmax);
+	image = null;
+	repaint();
+    }
+
+    /**
+     * Repaint just the sparklines whose data has changed. This is called
+     * by the RepaintScheduler, on the event dispatch thread.
+     */
+    @Override
+    public void repaintDirty() {
+	for (int i = 0; i < cells.size(); i++) {
+	    if (cells.get(i).dirty) {
+		repaintCell(i);
+	    }
+	}
+    }
+
+    private void repaintCell(final int index) {
+	repaint((index % ncolumns) * cellWidth, (index / ncolumns) * cellHeight,
+		cellWidth, cellHeight);
+    }
+
+    private void updateSize() {
+	int rows = Math.max(1, (cells.size() + ncolumns - 1) / ncolumns);
+	Dimension d = new Dimension(ncolumns * cellWidth, rows * cellHeight);
+	setMinimumSize(d);
+	setPreferredSize(d);
+	revalidate();
+    }
+
+    @Override
+    protected void paintComponent(final Graphics g) {
+	Graphics2D g2 = (Graphics2D) g;
+	int w = getWidth();
+	int h = getHeight();
+	if (w <= 0 || h <= 0) {
+	    return;
+	}
+	AffineTransform at = g2.getTransform();
+	double sx = at.getScaleX();
+	double sy = at.getScaleY();
+	int iw = (int) Math.ceil(w * sx);
+	int ih = (int) Math.ceil(h * sy);
+	Graphics2D ig;
+	if (image == null || image.getWidth() != iw
+		|| image.getHeight() != ih) {
+	    // start again, drawing every sparkline
+	    image = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_RGB);
+	    ig = image.createGraphics();
+	    ig.setPaint(bgcolor);
+	    ig.fillRect(0, 0, iw, ih);
+	    for (Cell cell : cells) {
+		cell.dirty = true;
+	    }
+	} else {
+	    ig = image.createGraphics();
+	}
+	ig.scale(sx, sy);
+	AffineTransform base = ig.getTransform();
+	for (int i = 0; i < cells.size(); i++) {
+	    Cell cell = cells.get(i);
+	    if (!cell.dirty) {
+		continue;
+	    }
+	    // clear first, so data arriving while we draw marks it again
+	    cell.dirty = false;
+	    int x = (i % ncolumns) * cellWidth;
+	    int y = (i / ncolumns) * cellHeight;
+	    ig.setClip(x, y, cellWidth, cellHeight);
+	    ig.translate(x, y);
+	    renderer.render(cell.model, ig, cellWidth, cellHeight);
+	    ig.setTransform(base);
+	}
+	ig.dispose();
+	// only copy the part of the image that's being repainted
+	Rectangle clip = g2.getClipBounds();
+	if (clip == null) {
+	    clip = new Rectangle(0, 0, w, h);
+	}
+	int x1 = Math.max(clip.x, 0);
+	int y1 = Math.max(clip.y, 0);
+	int x2 = Math.min(clip.x + clip.width, w);
+	int y2 = Math.min(clip.y + clip.height, h);
+	if (x2 > x1 && y2 > y1) {
+	    g2.drawImage(image, x1, y1, x2, y2,
+		(int) Math.floor(x1 * sx), (int) Math.floor(y1 * sy),
+		(int) Math.ceil(x2 * sx), (int) Math.ceil(y2 * sy), null);
+	}
+    }
+
+    /*
+     * A sparkline in the grid, which notes when its data changes.
+     */
+    private final class Cell implements ChangeListener, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The model holding the data.
+	 */
+	private final StripChartModel model;
+	/**
+	 * Whether the sparkline needs to be redrawn.
+	 */
+	private volatile boolean dirty = true;
+
+	Cell(final StripChartModel nmodel) {
+	    model = nmodel;
+	}
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    dirty = true;
+	    RepaintScheduler.getDefault().markDirty(JSparkGrid.this);
+	}
+    }
+}
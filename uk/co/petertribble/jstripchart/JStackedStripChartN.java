@@ -0,0 +1,669 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import javax.swing.JPanel;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_WIDTH;
+import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_HEIGHT;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_SOLID;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_CONNECTED;
+
+/**
+ * A panel that shows a graphical strip chart graphing any number of
+ * values, stacked on top of each other with the first series at the
+ * bottom. Each data point is drawn with all of its series at once.
+ */
+public final class JStackedStripChartN extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The current style.
+     */
+    private int style;
+
+    /**
+     * Whether we autoscale.
+     */
+    private volatile boolean autoscale = true;
+    /**
+     * How the scale is chosen when we autoscale.
+     */
+    private volatile int policy;
+
+    /**
+     * The model holding the values to display, for all the datasets.
+     */
+    private volatile StripChartModel model;
+    /**
+     * The model data in stacked form, which is what we paint.
+     */
+    private StackedModel stack;
+    /**
+     * Listens for changes to the stacked model, replaced along with the
+     * model.
+     */
+    private volatile ModelListener listener;
+    /**
+     * A copy of the stacked model data and where each value is drawn,
+     * brought up to date each time we paint.
+     */
+    private transient PixelCache pixels;
+    /**
+     * Whether we repaint as soon as data arrives.
+     */
+    private volatile boolean immediate;
+    /**
+     * Whether we render incrementally.
+     */
+    private boolean incremental;
+    /**
+     * Used to render incrementally, created when first needed.
+     */
+    private transient ScrollRenderer scroller;
+    /**
+     * Used to fill the columns, created when first needed.
+     */
+    private transient ColumnFiller filler;
+    /**
+     * Used to draw connected lines, created when first needed.
+     */
+    private transient LinePainter liner;
+    /**
+     * Used to fill solid charts, created when first needed.
+     */
+    private transient SolidPainter solid;
+    /**
+     * Summarizes the data by column, created when first needed.
+     */
+    private transient ColumnEnvelope envelope;
+
+    /**
+     * Vertical range (always measured from zero).
+     */
+    private volatile double dmax;
+
+    /**
+     * Counts what this chart does, created when first needed.
+     */
+    private transient volatile ChartMetrics metrics;
+    /**
+     * The number of data points drawn by the current paint.
+     */
+    private transient int ndrawn;
+
+    /**
+     * The background color.
+     */
+    private Color bgcolor;
+    /**
+     * The foreground colors of the datasets, one for each series shown.
+     */
+    private final Color[] fgcolors;
+
+    /**
+     * Create an empty strip chart.
+     *
+     * @param nseries The number of data series to be shown
+     *
+     * @throws IllegalArgumentException if nseries is less than 1
+     */
+    public JStackedStripChartN(final int nseries) {
+	this(nseries, DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    /**
+     * Create an empty strip chart of the specified size.
+     *
+     * @param nseries The number of data series to be shown
+     * @param width The desired width of the strip chart
+     * @param height The desired height of the strip chart
+     *
+     * @throws IllegalArgumentException if nseries is less than 1
+     */
+    public JStackedStripChartN(final int nseries, final int width,
+			final int height) {
+	this(width, height, Color.BLUE, JStripChartN.defaultColors(nseries));
+    }
+
+    /**
+     * Create an empty strip chart of the specified size and colours, with
+     * one data series for each foreground colour.
+     *
+     * @param width The desired width of the strip chart
+     * @param height The desired height of the strip chart
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolors The Colors to be used for the data series
+     *
+     * @throws IllegalArgumentException if no foreground colours are given
+     */
+    public JStackedStripChartN(final int width, final int height,
+			final Color nbcolor, final Color... nfcolors) {
+	this(new StripChartModel(nfcolors.length, width), width, height,
+		nbcolor, nfcolors);
+    }
+
+    /**
+     * Create a stacked strip chart of the specified size and colours,
+     * showing the data held in the first series of the given model, one
+     * for each foreground colour.
+     *
+     * @param nmodel The StripChartModel holding the data to be shown
+     * @param width The desired width of the strip chart
+     * @param height The desired height of the strip chart
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolors The Colors to be used for the data series
+     *
+     * @throws IllegalArgumentException if the model holds fewer series
+     * than there are foreground colours
+     */
+    public JStackedStripChartN(final StripChartModel nmodel, final int width,
+	    final int height, final Color nbcolor, final Color... nfcolors) {
+	bgcolor = nbcolor;
+	fgcolors = nfcolors.clone();
+	setMinimumSize(new Dimension(width, height));
+	setPreferredSize(new Dimension(width, height));
+	dmax = 1.0;
+	setModel(nmodel);
+    }
+
+    /**
+     * Return the number of data series shown by this chart.
+     *
+     * @return the number of data series shown
+     */
+    public int getSeriesCount() {
+	return fgcolors.length;
+    }
+
+    /**
+     * Return the model holding the data shown by this chart.
+     *
+     * @return the StripChartModel of this chart
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Return the metrics counting the work done by this chart. These are
+     * only collected while {@link ChartMetrics#isEnabled()} is true.
+     *
+     * @return the ChartMetrics for this chart
+     */
+    public ChartMetrics getMetrics() {
+	ChartMetrics m = metrics;
+	if (m == null) {
+	    m = ChartMetrics.forChart(this);
+	    metrics = m;
+	}
+	return m;
+    }
+
+    /**
+     * Set the model holding the data shown by this chart. The model may be
+     * shared with other charts, and must hold at least as many data series
+     * as this chart shows.
+     * This may be called while data is being added to the old or the new
+     * model from another thread.
+     *
+     * @param nmodel the new StripChartModel for this chart
+     *
+     * @throws IllegalArgumentException if the model holds too few series
+     */
+    public void setModel(final StripChartModel nmodel) {
+	if (nmodel.getSeriesCount() < fgcolors.length) {
+	    throw new IllegalArgumentException("Model holds "
+		+ nmodel.getSeriesCount() + " series, chart shows "
+		+ fgcolors.length);
+	}
+	// the stacked data is shared with the other charts showing the model
+	StackedModel nstack = nmodel.getStacked(fgcolors.length);
+	if (listener != null) {
+	    stack.getModel().removeChangeListener(listener);
+	}
+	ModelListener nlistener = new ModelListener(nstack);
+	model = nmodel;
+	stack = nstack;
+	listener = nlistener;
+	// a model kept in a file remembers a fixed scale it was shown with
+	double saved = nmodel.getSavedMax();
+	if (!Double.isNaN(saved)) {
+	    dmax = saved;
+	    autoscale = false;
+	}
+	// pick up the scale from a snapshot, as we're not on the writer thread
+	if (autoscale) {
+	    setScale(stack.getSnapshotScale(policy, dmax));
+	}
+	if (scroller != null) {
+	    scroller.invalidate();
+	}
+	if (pixels != null) {
+	    pixels.invalidate();
+	}
+	nstack.getModel().addChangeListener(nlistener);
+	repaint();
+    }
+
+    /**
+     * Set the line style to be used.
+     *
+     * @param nstyle The line style to be used
+     */
+    public void setStyle(final int nstyle) {
+	style = nstyle;
+    }
+
+    /**
+     * Set whether the chart is repainted as soon as data is added. By
+     * default, repaints are coalesced by the shared RepaintScheduler, so
+     * the chart is repainted at most once per frame.
+     *
+     * @param nimmediate true if the chart should be repainted immediately
+     */
+    public void setImmediateRepaint(final boolean nimmediate) {
+	immediate = nimmediate;
+    }
+
+    /**
+     * Set whether the chart is rendered incrementally. If so, the chart is
+     * kept in an offscreen image, and when data is added the image is
+     * scrolled and only the new data is drawn, rather than redrawing the
+     * whole chart. The chart is redrawn in full if its size, scale, or
+     * style changes. This is only effective if each data point is a whole
+     * number of pixels wide, such as when the width of the chart is the
+     * size of the model.
+     *
+     * @param nincremental true if the chart should be rendered
+     * incrementally
+     */
+    public void setIncrementalRendering(final boolean nincremental) {
+	incremental = nincremental;
+	repaint();
+    }
+
+    /**
+     * Set how the vertical scale is chosen when autoscaling. By default,
+     * with AUTOSCALE_EXACT, the scale is set just above the largest
+     * total shown, so changes whenever that does. With AUTOSCALE_DECIMAL
+     * or AUTOSCALE_BINARY, the scale snaps to round numbers, and only
+     * comes down once the data fit well under a smaller step, so it
+     * changes rarely. The new policy takes effect when data is next
+     * added.
+     *
+     * @param npolicy the autoscale policy to be used
+     */
+    public void setAutoscalePolicy(final int npolicy) {
+	policy = npolicy;
+    }
+
+    /**
+     * Set the maximum scale. Also forces the vertical scale to be fixed
+     * rather than dynamically adjusting to the data.
+     * If the model is kept in a file, the scale is saved there too, and
+     * picked up by a chart given the model after a restart.
+     *
+     * @param ndmax The required maximum value to be shown
+     */
+    public void setMax(final double ndmax) {
+	dmax = ndmax;
+	autoscale = false;
+	model.setSavedMax(ndmax);
+    }
+
+    /**
+     * Add data to the strip chart, one value for each series in the model.
+     *
+     * @param values the data points to add
+     *
+     * @throws IllegalArgumentException if there isn't a value for every
+     * series
+     */
+    public void add(final double... values) {
+	model.addColumn(values, 0);
+    }
+
+    /**
+     * Add data to the strip chart, taking one value for each series in the
+     * model from the given array, starting at the given offset.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the value for the first series
+     *
+     * @throws IllegalArgumentException if the array doesn't hold a value
+     * for every series starting at the offset
+     */
+    public void add(final double[] src, final int off) {
+	model.addColumn(src, off);
+    }
+
+    /**
+     * Add several data points to the strip chart, oldest first, with the
+     * values for each point stored together. The chart is rescaled and
+     * repainted once, after all the data is added.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the first value
+     * @param len the number of data points to add
+     *
+     * @see StripChartModel#addColumns(double[], int, int)
+     */
+    public void add(final double[] src, final int off, final int len) {
+	model.addColumns(src, off, len);
+    }
+
+    /**
+     * Save the data, scale, and style of this chart to a channel.
+     *
+     * @param ch the channel to write to
+     *
+     * @throws IOException if the state can't be written
+     *
+     * @see ChartState
+     */
+    public void saveState(final WritableByteChannel ch) throws IOException {
+	new ChartState(model, style, autoscale, policy, dmax).write(ch);
+    }
+
+    /**
+     * Restore the data, scale, and style of this chart from a channel, as
+     * saved by saveState(). The chart is given a new model holding the
+     * saved data.
+     *
+     * @param ch the channel to read from
+     *
+     * @throws IOException if a valid state can't be read
+     */
+    public void restoreState(final ReadableByteChannel ch)
+		throws IOException {
+	ChartState state = ChartState.read(ch);
+	style = state.getStyle();
+	autoscale = state.isAutoscale();
+	policy = state.getPolicy();
+	if (!autoscale) {
+	    dmax = state.getMax();
+	}
+	setModel(state.getModel());
+    }
+
+    /*
+     * Set the vertical range worked out from the data, counting the change
+     * if it's different.
+     */
+    private void setScale(final double ndmax) {
+	if (ndmax != dmax && ChartMetrics.isEnabled()) {
+	    getMetrics().rescaled(dmax, ndmax);
+	}
+	dmax = ndmax;
+    }
+
+    @Override
+    public void paint(final Graphics g) {
+	if (ChartMetrics.isEnabled()) {
+	    long start = System.nanoTime();
+	    ndrawn = 0;
+	    paintChart((Graphics2D) g);
+	    getMetrics().painted(System.nanoTime() - start, ndrawn);
+	} else {
+	    paintChart((Graphics2D) g);
+	}
+    }
+
+    /*
+     * Paint the chart, keeping count of the data points drawn.
+     */
+    private void paintChart(final Graphics2D g2) {
+	// the scale may be changed by another thread at any time, so read
+	// it once and use it for the whole paint
+	double scale = dmax;
+	int iw = getWidth();
+	int ih = getHeight();
+
+	StripChartModel smodel = stack.getModel();
+	int nsize = smodel.getSize();
+	if (iw > 0 && nsize > iw) {
+	    // more data than pixels, so reduce the data to fit
+	    paintDecimated(g2, iw, ih, scale);
+	    return;
+	}
+	if (pixels == null) {
+	    pixels = new PixelCache();
+	}
+	long total = pixels.update(smodel, ih, ih, scale);
+	if (incremental) {
+	    if (scroller == null) {
+		scroller = new ScrollRenderer(this::paintColumns);
+	    }
+	    scroller.paint(g2, iw, ih, bgcolor, nsize, total, scale,
+			style);
+	    return;
+	}
+
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, iw, ih);
+
+	paintColumns(g2, iw, ih, scale, 0, (int) Math.min(total, nsize));
+    }
+
+    /*
+     * Draw the chart one pixel column at a time, when there are more data
+     * points than pixels.
+     */
+    private void paintDecimated(final Graphics2D g2, final int iw,
+		final int ih, final double scale) {
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, iw, ih);
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(1.0);
+	if (envelope == null) {
+	    envelope = new ColumnEnvelope(fgcolors.length);
+	}
+	envelope.update(stack.getModel(), iw);
+	ndrawn += iw;
+	double h = ih;
+	int last = fgcolors.length - 1;
+
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    solid.begin(fgcolors.length, iw, h);
+	    for (int age = 0; age < iw; age++) {
+		solid.column(iw - age - 1.0, 1.0);
+		boolean empty = envelope.isEmpty(age);
+		for (int s = last; s >= 0; s--) {
+		    solid.top(s, empty ? h
+			: h - h * envelope.getMax(s, age) / scale);
+		}
+	    }
+	    paintSolid(g2);
+	    return;
+	}
+
+	for (int age = 0; age < iw; age++) {
+	    if (envelope.isEmpty(age)) {
+		continue;
+	    }
+	    double x = iw - age - 1.0;
+	    // cover the range from the minimum to the maximum
+	    for (int s = last; s >= 0; s--) {
+		double hh = h * envelope.getMax(s, age) / scale;
+		double dh = Math.max(hh - h * envelope.getMin(s, age) / scale,
+			0.0) + 1.0;
+		g2.setPaint(fgcolors[s]);
+		filler.fill(g2, x, h - hh, 1.0, dh);
+	    }
+	}
+    }
+
+    /*
+     * Fill each band once their tops have been built. Each band
+     * reaches down to the baseline, so each total is painted over by the
+     * totals below it.
+     */
+    private void paintSolid(final Graphics2D g2) {
+	for (int s = fgcolors.length - 1; s >= 0; s--) {
+	    g2.setPaint(fgcolors[s]);
+	    solid.fill(g2, s);
+	}
+    }
+
+    /*
+     * Draw data points from index from up to n - 1 of the cached data, with
+     * the last at the right hand edge of the chart. All the series for a
+     * data point are drawn together, so we make a single pass through the
+     * cached data.
+     */
+    private void paintColumns(final Graphics2D g2, final double w,
+		final double h, final double scale, final int from,
+		final int n) {
+	StripChartModel smodel = stack.getModel();
+	int nseries = smodel.getSeriesCount();
+	float[] ys = pixels.getPixels();
+	int last = fgcolors.length - 1;
+	double x = w;
+	double dx = w / ((double) smodel.getSize());
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(dx);
+
+	if (style == STYLE_CONNECTED) {
+	    if (liner == null) {
+		liner = new LinePainter();
+	    }
+	    liner.setGeometry(w, h, smodel.getSize(), scale);
+	    // paint the last series first, so the first is in front
+	    for (int s = last; s > 0; s--) {
+		g2.setPaint(fgcolors[s]);
+		liner.drawPixels(g2, ys, nseries, s, from, n);
+	    }
+	    g2.setPaint(fgcolors[0]);
+	    ndrawn += liner.drawPixels(g2, ys, nseries, 0, from, n);
+	    return;
+	}
+	ndrawn += n - from;
+
+	/*
+	 * increment x, use current values as y
+	 * start at the right, work our way back through the data
+	 * from the most recent value
+	 */
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    solid.begin(fgcolors.length, n - from, h);
+	    for (int i = n - 1; i >= from; i--) {
+		x -= dx;
+		int base = i * nseries;
+		solid.column(x, dx);
+		// the stacked values are the tops of the bands
+		for (int s = last; s >= 0; s--) {
+		    solid.top(s, ys[base + s]);
+		}
+	    }
+	    paintSolid(g2);
+	    return;
+	}
+	for (int i = n - 1; i >= from; i--) {
+	    x -= dx;
+	    int base = i * nseries;
+	    // paint the last series first, so the first is in front
+	    for (int s = last; s >= 0; s--) {
+		g2.setPaint(fgcolors[s]);
+		filler.fill(g2, x, ys[base + s], dx, dx);
+	    }
+	}
+    }
+
+    /*
+     * Update the chart when data is added to the model. Each model we're
+     * given gets a new listener, which only uses the stacked form of that
+     * model, so a listener still running when setModel swaps the model
+     * never mixes the old and the new.
+     */
+    private final class ModelListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The stacked model we listen to.
+	 */
+	private final StackedModel lstack;
+	/**
+	 * The total number of data points in the stacked model when we
+	 * last looked.
+	 */
+	private long nseen;
+
+	ModelListener(final StackedModel nstack) {
+	    lstack = nstack;
+	    nseen = nstack.getModel().getTotal();
+	}
+
+	/*
+	 * Called when data is added to the model. The scale follows the
+	 * largest total of the series currently held by the model, unless
+	 * the chart has moved on to another model.
+	 * Returns the number of data points added since we last looked.
+	 */
+	private long updateScale() {
+	    long total = lstack.getModel().getTotal();
+	    long nnew = total - nseen;
+	    nseen = total;
+	    if (autoscale && listener == this) {
+		setScale(lstack.getScale(policy, dmax));
+	    }
+	    return nnew;
+	}
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    long nnew = updateScale();
+	    if (ChartMetrics.isEnabled()) {
+		ChartMetrics m = getMetrics();
+		m.ingested(nnew);
+		m.repaintRequested();
+	    }
+	    if (immediate) {
+		repaint();
+	    } else {
+		RepaintScheduler.getDefault()
+		    .markDirty(JStackedStripChartN.this);
+	    }
+	}
+    }
+}
@@ -25,7 +25,13 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Rectangle2D;
+import java.nio.DoubleBuffer;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * A panel that shows a graphical strip chart.
@@ -51,6 +57,35 @@ public final class JStripChart extends JPanel {
      * For a solid (filled) chart.
      */
     public static final int STYLE_SOLID = 1;
+    /**
+     * For a line chart with the data points joined up. When there are more
+     * data points than pixels, each column shows the range of its data,
+     * as for {@code STYLE_LINE}.
+     */
+    public static final int STYLE_CONNECTED = 2;
+    /**
+     * When there is more data than pixels, show the minimum and maximum of
+     * the data in each column.
+     */
+    public static final int DECIMATE_MINMAX = 0;
+    /**
+     * When there is more data than pixels, pick one representative data
+     * point for each column, using the Largest-Triangle-Three-Buckets
+     * algorithm.
+     */
+    public static final int DECIMATE_LTTB = 1;
+    /**
+     * When autoscaling, set the scale just above the largest value shown.
+     */
+    public static final int AUTOSCALE_EXACT = 0;
+    /**
+     * When autoscaling, snap the scale to 1, 2, or 5 times a power of ten.
+     */
+    public static final int AUTOSCALE_DECIMAL = 1;
+    /**
+     * When autoscaling, snap the scale to a power of two.
+     */
+    public static final int AUTOSCALE_BINARY = 2;
 
     /**
      * The current style.
@@ -58,30 +93,80 @@ public final class JStripChart extends JPanel {
     private int style;
 
     /**
-     * How many points we save.
+     * Whether we autoscale.
      */
-    private int nsize;
+    private volatile boolean autoscale = true;
     /**
-     * How many points we currently have.
+     * How the scale is chosen when we autoscale.
      */
-    private int ncur;
+    private volatile int policy;
+
     /**
-     * Whether we autoscale.
+     * The model holding the values to display.
      */
-    private boolean autoscale = true;
-
+    private volatile StripChartModel model;
     /**
-     * The values to display.
-     *
-     * We work with doubles, which is what Rectangle2D wants. We can display
-     * long or int, but they're cast to double internally.
+     * Listens for changes to the model, replaced along with the model.
      */
-    private double[] values;
-
+    private volatile ModelListener listener;
+    /**
+     * A copy of the model data, taken each time we paint decimated.
+     */
+    private transient double[] snapshot;
+    /**
+     * A copy of the model data and where each value is drawn, brought up
+     * to date each time we paint.
+     */
+    private transient PixelCache pixels;
+    /**
+     * Whether we repaint as soon as data arrives.
+     */
+    private volatile boolean immediate;
+    /**
+     * Whether we render incrementally.
+     */
+    private boolean incremental;
+    /**
+     * Used to render incrementally, created when first needed.
+     */
+    private transient ScrollRenderer scroller;
+    /**
+     * Used to fill the columns, created when first needed.
+     */
+    private transient ColumnFiller filler;
+    /**
+     * Used to draw connected lines, created when first needed.
+     */
+    private transient LinePainter liner;
+    /**
+     * Used to fill solid charts, created when first needed.
+     */
+    private transient SolidPainter solid;
+    /**
+     * How we reduce the data if there's more than will fit.
+     */
+    private int decimation;
+    /**
+     * Summarizes the data by column, created when first needed.
+     */
+    private transient ColumnEnvelope envelope;
+    /**
+     * The values chosen for each column when using LTTB.
+     */
+    private transient double[] lttb;
     /**
      * Vertical range (always measured from zero).
      */
-    private double dmax;
+    private volatile double dmax;
+
+    /**
+     * Counts what this chart does, created when first needed.
+     */
+    private transient volatile ChartMetrics metrics;
+    /**
+     * The number of data points drawn by the current paint.
+     */
+    private transient int ndrawn;
 
     /**
      * The background color.
@@ -129,13 +214,87 @@ public final class JStripChart extends JPanel {
      */
     public JStripChart(final int width, final int height, final Color nbcolor,
 			final Color nfcolor) {
+	this(new StripChartModel(width), width, height, nbcolor, nfcolor);
+    }
+
+    /**
+     * Create a strip chart of the specified size and colours, showing the
+     * data held in the given model.
+     *
+     * @param nmodel The StripChartModel holding the data to be shown
+     * @param width The desired width of the strip chart
+     * @param height The desired height of the strip chart
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolor The Color to be used for the chart foreground
+     */
+    public JStripChart(final StripChartModel nmodel, final int width,
+			final int height, final Color nbcolor,
+			final Color nfcolor) {
 	bgcolor = nbcolor;
 	fgcolor = nfcolor;
 	setMinimumSize(new Dimension(width, height));
 	setPreferredSize(new Dimension(width, height));
-	nsize = width;
-	values = new double[nsize];
 	dmax = 1.0;
+	setModel(nmodel);
+    }
+
+    /**
+     * Return the model holding the data shown by this chart.
+     *
+     * @return the StripChartModel of this chart
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Return the metrics counting the work done by this chart. These are
+     * only collected while {@link ChartMetrics#isEnabled()} is true.
+     *
+     * @return the ChartMetrics for this chart
+     */
+    public ChartMetrics getMetrics() {
+	ChartMetrics m = metrics;
+	if (m == null) {
+	    m = ChartMetrics.forChart(this);
+	    metrics = m;
+	}
+	return m;
+    }
+
+    /**
+     * Set the model holding the data shown by this chart. The model may be
+     * shared with other charts. This may be called while data is being
+     * added to the old or the new model from another thread.
+     *
+     * @param nmodel the new StripChartModel for this chart
+     */
+    public void setModel(final StripChartModel nmodel) {
+	if (listener != null) {
+	    model.removeChangeListener(listener);
+	}
+	ModelListener nlistener = new ModelListener(nmodel,
+					nmodel.getScaler(1));
+	model = nmodel;
+	listener = nlistener;
+	// a model kept in a file remembers a fixed scale it was shown with
+	double saved = nmodel.getSavedMax();
+	if (!Double.isNaN(saved)) {
+	    dmax = saved;
+	    autoscale = false;
+	}
+	// pick up the scale from a snapshot, as we're not on the writer thread
+	if (autoscale) {
+	    setScale(nlistener.scaler.getSnapshotScale(policy, dmax));
+	}
+	if (scroller != null) {
+	    scroller.invalidate();
+	}
+	if (pixels != null) {
+	    pixels.invalidate();
+	}
+	nmodel.addChangeListener(nlistener);
+	repaint();
     }
 
     /**
@@ -147,6 +306,65 @@ public final class JStripChart extends JPanel {
 	style = nstyle;
     }
 
+    /**
+     * Set whether the chart is repainted as soon as data is added. By
+     * default, repaints are coalesced by the shared RepaintScheduler, so
+     * the chart is repainted at most once per frame.
+     *
+     * @param nimmediate true if the chart should be repainted immediately
+     */
+    public void setImmediateRepaint(final boolean nimmediate) {
+	immediate = nimmediate;
+    }
+
+    /**
+     * Set whether the chart is rendered incrementally. If so, the chart is
+     * kept in an offscreen image, and when data is added the image is
+     * scrolled and only the new data is drawn, rather than redrawing the
+     * whole chart. The chart is redrawn in full if its size, scale, or
+     * style changes. This is only effective if each data point is a whole
+     * number of pixels wide, such as when the width of the chart is the
+     * size of the model.
+     *
+     * @param nincremental true if the chart should be rendered
+     * incrementally
+     */
+    public void setIncrementalRendering(final boolean nincremental) {
+	incremental = nincremental;
+	repaint();
+    }
+
+    /**
+     * Set how the data is reduced when the model holds more data points
+     * than the chart is wide. The default, {@code DECIMATE_MINMAX}, shows
+     * the range of the data in each column, so spikes are never lost and
+     * only new data needs to be processed on each repaint.
+     * {@code DECIMATE_LTTB} picks one representative data point for each
+     * column, which looks more like the original data but processes all
+     * the data on every repaint.
+     *
+     * @param ndecimation the decimation mode to be used
+     */
+    public void setDecimation(final int ndecimation) {
+	decimation = ndecimation;
+	repaint();
+    }
+
+    /**
+     * Set how the vertical scale is chosen when autoscaling. By default,
+     * with AUTOSCALE_EXACT, the scale is set just above the largest
+     * value shown, so changes whenever that does. With AUTOSCALE_DECIMAL
+     * or AUTOSCALE_BINARY, the scale snaps to round numbers, and only
+     * comes down once the data fit well under a smaller step, so it
+     * changes rarely. The new policy takes effect when data is next
+     * added.
+     *
+     * @param npolicy the autoscale policy to be used
+     */
+    public void setAutoscalePolicy(final int npolicy) {
+	policy = npolicy;
+    }
+
     /**
      * Set the maximum scale. Also forces the vertical scale to be fixed
      * rather than dynamically adjusting to the data.
@@ -170,12 +388,15 @@ public final class JStripChart extends JPanel {
     /**
      * Set the maximum scale. Also forces the vertical scale to be fixed
      * rather than dynamically adjusting to the data.
+     * If the model is kept in a file, the scale is saved there too, and
+     * picked up by a chart given the model after a restart.
      *
      * @param ndmax The required maximum value to be shown
      */
     public void setMax(final double ndmax) {
 	dmax = ndmax;
 	autoscale = false;
+	model.setSavedMax(ndmax);
     }
 
     /**
@@ -202,52 +423,309 @@ public final class JStripChart extends JPanel {
      * @param d the data point to add
      */
     public void add(final double d) {
-	if (autoscale && dmax < d * 1.1) {
-	    // fudge a little extra for rounding
-	    dmax = d * 1.10001;
+	model.add(d);
+    }
+
+    /**
+     * Add an array of data points to the strip chart, oldest first. The
+     * chart is rescaled and repainted once, after all the data is added.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the first data point
+     * @param len the number of data points to add
+     */
+    public void add(final double[] src, final int off, final int len) {
+	model.add(src, off, len);
+    }
+
+    /**
+     * Add all the remaining data points in a buffer to the strip chart,
+     * oldest first. The chart is rescaled and repainted once, after all the
+     * data is added.
+     *
+     * @param buf the buffer containing the data to add
+     */
+    public void add(final DoubleBuffer buf) {
+	model.add(buf);
+    }
+
+    /**
+     * Save the data, scale, and style of this chart to a channel.
+     *
+     * @param ch the channel to write to
+     *
+     * @throws IOException if the state can't be written
+     *
+     * @see ChartState
+     */
+    public void saveState(final WritableByteChannel ch) throws IOException {
+	new ChartState(model, style, autoscale, policy, dmax).write(ch);
+    }
+
+    /**
+     * Restore the data, scale, and style of this chart from a channel, as
+     * saved by saveState(). The chart is given a new model holding the
+     * saved data.
+     *
+     * @param ch the channel to read from
+     *
+     * @throws IOException if a valid state can't be read
+     */
+    public void restoreState(final ReadableByteChannel ch)
+		throws IOException {
+	ChartState state = ChartState.read(ch);
+	style = state.getStyle();
+	autoscale = state.isAutoscale();
+	policy = state.getPolicy();
+	if (!autoscale) {
+	    dmax = state.getMax();
 	}
-	ncur++;
-	if (ncur == nsize) {
-	    // wrap back to the beginning
-	    ncur = 0;
+	setModel(state.getModel());
+    }
+
+    /*
+     * Set the vertical range worked out from the data, counting the change
+     * if it's different.
+     */
+    private void setScale(final double ndmax) {
+	if (ndmax != dmax && ChartMetrics.isEnabled()) {
+	    getMetrics().rescaled(dmax, ndmax);
 	}
-	values[ncur] = d;
-	repaint();
+	dmax = ndmax;
     }
 
     @Override
     public void paint(final Graphics g) {
-	Graphics2D g2 = (Graphics2D) g;
-	Dimension d = getSize();
+	if (ChartMetrics.isEnabled()) {
+	    long start = System.nanoTime();
+	    ndrawn = 0;
+	    paintChart((Graphics2D) g);
+	    getMetrics().painted(System.nanoTime() - start, ndrawn);
+	} else {
+	    paintChart((Graphics2D) g);
+	}
+    }
+
+    /*
+     * Paint the chart, keeping count of the data points drawn.
+     */
+    private void paintChart(final Graphics2D g2) {
+	// the scale may be changed by another thread at any time, so read
+	// it once and use it for the whole paint
+	double scale = dmax;
+	int iw = getWidth();
+	int ih = getHeight();
+
+	int nsize = model.getSize();
+	if (iw > 0 && nsize > iw) {
+	    // more data than pixels, so reduce the data to fit
+	    paintDecimated(g2, iw, ih, scale);
+	    return;
+	}
+	if (pixels == null) {
+	    pixels = new PixelCache();
+	}
+	long total = pixels.update(model, ih, ih, scale);
+	if (incremental) {
+	    if (scroller == null) {
+		scroller = new ScrollRenderer(this::paintColumns);
+	    }
+	    scroller.paint(g2, iw, ih, bgcolor, nsize, total, scale,
+			style);
+	    return;
+	}
 
-	double h = d.height;
-	double w = d.width;
 	g2.setPaint(bgcolor);
-	g2.fill(new Rectangle2D.Double(0.0d, 0.0d, w, h));
+	g2.fillRect(0, 0, iw, ih);
 
+	paintColumns(g2, iw, ih, scale, 0, (int) Math.min(total, nsize));
+    }
+
+    /*
+     * Draw the chart one pixel column at a time, when there are more data
+     * points than pixels.
+     */
+    private void paintDecimated(final Graphics2D g2, final int iw,
+		final int ih, final double scale) {
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, iw, ih);
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(1.0);
+	g2.setPaint(fgcolor);
+	double h = ih;
+	if (decimation == DECIMATE_LTTB) {
+	    int nsize = model.getSize();
+	    int nseries = model.getSeriesCount();
+	    if (snapshot == null || snapshot.length != nsize * nseries) {
+		snapshot = new double[nsize * nseries];
+	    }
+	    if (lttb == null || lttb.length != iw) {
+		lttb = new double[iw];
+	    }
+	    int n = (int) Math.min(model.snapshot(snapshot), nsize);
+	    int ncols = ColumnEnvelope.lttb(snapshot, nseries, n, nsize,
+			lttb);
+	    ndrawn += ncols;
+	    if (style == STYLE_SOLID) {
+		if (solid == null) {
+		    solid = new SolidPainter();
+		}
+		solid.begin(1, ncols, h);
+		for (int age = 0; age < ncols; age++) {
+		    solid.column(iw - age - 1.0, 1.0);
+		    solid.top(0, h - h * lttb[age] / scale);
+		}
+		solid.fill(g2, 0);
+		return;
+	    }
+	    for (int age = 0; age < ncols; age++) {
+		double hh = h * lttb[age] / scale;
+		filler.fill(g2, iw - age - 1.0, h - hh, 1.0, 1.0);
+	    }
+	    return;
+	}
+	if (envelope == null) {
+	    envelope = new ColumnEnvelope(1);
+	}
+	envelope.update(model, iw);
+	ndrawn += iw;
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    solid.begin(1, iw, h);
+	    for (int age = 0; age < iw; age++) {
+		solid.column(iw - age - 1.0, 1.0);
+		solid.top(0, envelope.isEmpty(age) ? h
+			: h - h * envelope.getMax(0, age) / scale);
+	    }
+	    solid.fill(g2, 0);
+	    return;
+	}
+	for (int age = 0; age < iw; age++) {
+	    if (envelope.isEmpty(age)) {
+		continue;
+	    }
+	    // cover the range from the minimum to the maximum
+	    double hh = h * envelope.getMax(0, age) / scale;
+	    double dh = Math.max(hh - h * envelope.getMin(0, age) / scale, 0.0)
+		+ 1.0;
+	    filler.fill(g2, iw - age - 1.0, h - hh, 1.0, dh);
+	}
+    }
+
+    /*
+     * Draw data points from index from up to n - 1 of the cached data, with
+     * the last at the right hand edge of the chart.
+     */
+    private void paintColumns(final Graphics2D g2, final double w,
+		final double h, final double scale, final int from,
+		final int n) {
+	int nseries = model.getSeriesCount();
+	float[] ys = pixels.getPixels();
 	double x = w;
-	double dx = w / ((double) nsize);
+	double dx = w / ((double) model.getSize());
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(dx);
 
 	g2.setPaint(fgcolor);
+	if (style == STYLE_CONNECTED) {
+	    if (liner == null) {
+		liner = new LinePainter();
+	    }
+	    liner.setGeometry(w, h, model.getSize(), scale);
+	    ndrawn += liner.drawPixels(g2, ys, nseries, 0, from, n);
+	    return;
+	}
+	ndrawn += n - from;
 	/*
 	 * increment x, use current values as y
-	 * start at the right, work our way back through the array
-	 * from the current position
+	 * start at the right, work our way back through the data
+	 * from the most recent value
 	 */
-	for (int i = ncur; i >= 0; i--) {
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    solid.begin(1, n - from, h);
+	    for (int i = n - 1; i >= from; i--) {
+		x -= dx;
+		solid.column(x, dx);
+		solid.top(0, ys[i * nseries]);
+	    }
+	    solid.fill(g2, 0);
+	    return;
+	}
+	for (int i = n - 1; i >= from; i--) {
 	    x -= dx;
-	    double hh = h * values[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+	    filler.fill(g2, x, ys[i * nseries], dx, dx);
+	}
+    }
+
+    /*
+     * Update the chart when data is added to the model. Each model we're
+     * given gets a new listener, which only uses that model and its
+     * scaler, so a listener still running when setModel swaps the model
+     * never mixes the old and the new.
+     */
+    private final class ModelListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The model we listen to.
+	 */
+	private final StripChartModel lmodel;
+	/**
+	 * Works out the vertical range from the data.
+	 */
+	private final AutoScaler scaler;
+	/**
+	 * The total number of data points in the model when we last looked.
+	 */
+	private long nseen;
+
+	ModelListener(final StripChartModel nmodel,
+		final AutoScaler nscaler) {
+	    lmodel = nmodel;
+	    scaler = nscaler;
+	    nseen = nmodel.getTotal();
 	}
+
 	/*
-	 * Now go from the end of the array back to the current position
+	 * Called when data is added to the model. The scale follows the
+	 * largest value currently held by the model, unless the chart has
+	 * moved on to another model.
+	 * Returns the number of data points added since we last looked.
 	 */
-	for (int i = nsize - 1; i > ncur; i--) {
-	    x -= dx;
-	    double hh = h * values[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+	private long updateScale() {
+	    long total = lmodel.getTotal();
+	    long nadded = total - nseen;
+	    nseen = total;
+	    if (autoscale && listener == this) {
+		setScale(scaler.getScale(policy, dmax));
+	    }
+	    return nadded;
+	}
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    long nnew = updateScale();
+	    if (ChartMetrics.isEnabled()) {
+		ChartMetrics m = getMetrics();
+		m.ingested(nnew);
+		m.repaintRequested();
+	    }
+	    if (immediate) {
+		repaint();
+	    } else {
+		RepaintScheduler.getDefault().markDirty(JStripChart.this);
+	    }
 	}
     }
 }
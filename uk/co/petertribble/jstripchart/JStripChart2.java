@@ -25,11 +25,17 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Rectangle2D;
+import java.nio.DoubleBuffer;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_WIDTH;
 import static uk.co.petertribble.jstripchart.JStripChart.DEFAULT_HEIGHT;
-import static uk.co.petertribble.jstripchart.JStripChart.STYLE_LINE;
 import static uk.co.petertribble.jstripchart.JStripChart.STYLE_SOLID;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_CONNECTED;
 
 /**
  * A panel that shows a graphical strip chart graphing 2 values.
@@ -44,37 +50,68 @@ public final class JStripChart2 extends JPanel {
     private int style;
 
     /**
-     * How many points we save.
+     * Whether we autoscale.
      */
-    private int nsize;
+    private volatile boolean autoscale = true;
     /**
-     * How many points we currently have.
+     * How the scale is chosen when we autoscale.
      */
-    private int ncur;
+    private volatile int policy;
+
     /**
-     * Whether we autoscale.
+     * The model holding the values to display, for both datasets.
      */
-    private boolean autoscale = true;
-
+    private volatile StripChartModel model;
     /**
-     * The values to display, for the first dataset.
-     *
-     * We work with doubles, which is what Rectangle2D wants. We can display
-     * long or int, but they're cast to double internally.
+     * Listens for changes to the model, replaced along with the model.
      */
-    private double[] values1;
+    private volatile ModelListener listener;
     /**
-     * The values to display, for the second dataset.
-     *
-     * We work with doubles, which is what Rectangle2D wants. We can display
-     * long or int, but they're cast to double internally.
+     * A copy of the model data and where each value is drawn, brought up
+     * to date each time we paint.
      */
-    private double[] values2;
-
+    private transient PixelCache pixels;
+    /**
+     * Whether we repaint as soon as data arrives.
+     */
+    private volatile boolean immediate;
+    /**
+     * Whether we render incrementally.
+     */
+    private boolean incremental;
+    /**
+     * Used to render incrementally, created when first needed.
+     */
+    private transient ScrollRenderer scroller;
+    /**
+     * Used to fill the columns, created when first needed.
+     */
+    private transient ColumnFiller filler;
+    /**
+     * Used to draw connected lines, created when first needed.
+     */
+    private transient LinePainter liner;
+    /**
+     * Used to fill solid charts, created when first needed.
+     */
+    private transient SolidPainter solid;
+    /**
+     * Summarizes the data by column, created when first needed.
+     */
+    private transient ColumnEnvelope envelope;
     /**
      * Vertical range (always measured from zero).
      */
-    private double dmax;
+    private volatile double dmax;
+
+    /**
+     * Counts what this chart does, created when first needed.
+     */
+    private transient volatile ChartMetrics metrics;
+    /**
+     * The number of data points drawn by the current paint.
+     */
+    private transient int ndrawn;
 
     /**
      * The background color.
@@ -129,15 +166,99 @@ public final class JStripChart2 extends JPanel {
      */
     public JStripChart2(final int width, final int height, final Color nbcolor,
 			final Color nfcolor1, final Color nfcolor2) {
+	this(new StripChartModel(2, width), width, height, nbcolor, nfcolor1,
+		nfcolor2);
+    }
+
+    /**
+     * Create a strip chart of the specified size and colours, showing the
+     * data held in the first two series of the given model.
+     *
+     * @param nmodel The StripChartModel holding the data to be shown
+     * @param width The desired width of the strip chart
+     * @param height The desired height of the strip chart
+     * @param nbcolor The Color to be used for the chart background
+     * @param nfcolor1 The Color to be used for the first data series
+     * @param nfcolor2 The Color to be used for the second data series
+     *
+     * @throws IllegalArgumentException if the model holds only one series
+     */
+    public JStripChart2(final StripChartModel nmodel, final int width,
+	    final int height, final Color nbcolor, final Color nfcolor1,
+	    final Color nfcolor2) {
 	bgcolor = nbcolor;
 	fgcolor1 = nfcolor1;
 	fgcolor2 = nfcolor2;
 	setMinimumSize(new Dimension(width, height));
 	setPreferredSize(new Dimension(width, height));
-	nsize = width;
-	values1 = new double[nsize];
-	values2 = new double[nsize];
 	dmax = 1.0;
+	setModel(nmodel);
+    }
+
+    /**
+     * Return the model holding the data shown by this chart.
+     *
+     * @return the StripChartModel of this chart
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Return the metrics counting the work done by this chart. These are
+     * only collected while {@link ChartMetrics#isEnabled()} is true.
+     *
+     * @return the ChartMetrics for this chart
+     */
+    public ChartMetrics getMetrics() {
+	ChartMetrics m = metrics;
+	if (m == null) {
+	    m = ChartMetrics.forChart(this);
+	    metrics = m;
+	}
+	return m;
+    }
+
+    /**
+     * Set the model holding the data shown by this chart. The model may be
+     * shared with other charts, and must hold at least two data series.
+     * This may be called while data is being added to the old or the new
+     * model from another thread.
+     *
+     * @param nmodel the new StripChartModel for this chart
+     *
+     * @throws IllegalArgumentException if the model holds only one series
+     */
+    public void setModel(final StripChartModel nmodel) {
+	if (nmodel.getSeriesCount() < 2) {
+	    throw new IllegalArgumentException("Model holds "
+		+ nmodel.getSeriesCount() + " series, chart shows 2");
+	}
+	if (listener != null) {
+	    model.removeChangeListener(listener);
+	}
+	ModelListener nlistener = new ModelListener(nmodel,
+					nmodel.getScaler(2));
+	model = nmodel;
+	listener = nlistener;
+	// a model kept in a file remembers a fixed scale it was shown with
+	double saved = nmodel.getSavedMax();
+	if (!Double.isNaN(saved)) {
+	    dmax = saved;
+	    autoscale = false;
+	}
+	// pick up the scale from a snapshot, as we're not on the writer thread
+	if (autoscale) {
+	    setScale(nlistener.scaler.getSnapshotScale(policy, dmax));
+	}
+	if (scroller != null) {
+	    scroller.invalidate();
+	}
+	if (pixels != null) {
+	    pixels.invalidate();
+	}
+	nmodel.addChangeListener(nlistener);
+	repaint();
     }
 
     /**
@@ -149,6 +270,49 @@ public final class JStripChart2 extends JPanel {
 	style = nstyle;
     }
 
+    /**
+     * Set whether the chart is repainted as soon as data is added. By
+     * default, repaints are coalesced by the shared RepaintScheduler, so
+     * the chart is repainted at most once per frame.
+     *
+     * @param nimmediate true if the chart should be repainted immediately
+     */
+    public void setImmediateRepaint(final boolean nimmediate) {
+	immediate = nimmediate;
+    }
+
+    /**
+     * Set whether the chart is rendered incrementally. If so, the chart is
+     * kept in an offscreen image, and when data is added the image is
+     * scrolled and only the new data is drawn, rather than redrawing the
+     * whole chart. The chart is redrawn in full if its size, scale, or
+     * style changes. This is only effective if each data point is a whole
+     * number of pixels wide, such as when the width of the chart is the
+     * size of the model.
+     *
+     * @param nincremental true if the chart should be rendered
+     * incrementally
+     */
+    public void setIncrementalRendering(final boolean nincremental) {
+	incremental = nincremental;
+	repaint();
+    }
+
+    /**
+     * Set how the vertical scale is chosen when autoscaling. By default,
+     * with AUTOSCALE_EXACT, the scale is set just above the largest
+     * value shown, so changes whenever that does. With AUTOSCALE_DECIMAL
+     * or AUTOSCALE_BINARY, the scale snaps to round numbers, and only
+     * comes down once the data fit well under a smaller step, so it
+     * changes rarely. The new policy takes effect when data is next
+     * added.
+     *
+     * @param npolicy the autoscale policy to be used
+     */
+    public void setAutoscalePolicy(final int npolicy) {
+	policy = npolicy;
+    }
+
     /**
      * Set the maximum scale. Also forces the vertical scale to be fixed
      * rather than dynamically adjusting to the data.
@@ -172,12 +336,15 @@ public final class JStripChart2 extends JPanel {
     /**
      * Set the maximum scale. Also forces the vertical scale to be fixed
      * rather than dynamically adjusting to the data.
+     * If the model is kept in a file, the scale is saved there too, and
+     * picked up by a chart given the model after a restart.
      *
      * @param ndmax The required maximum value to be shown
      */
     public void setMax(final double ndmax) {
 	dmax = ndmax;
 	autoscale = false;
+	model.setSavedMax(ndmax);
     }
 
     /**
@@ -207,90 +374,333 @@ public final class JStripChart2 extends JPanel {
      * @param d2 the second data point to add
      */
     public void add(final double d1, final double d2) {
-	if (autoscale && dmax < d1 * 1.1) {
-	    // fudge a little extra for rounding
-	    dmax = d1 * 1.10001;
-	}
-	if (autoscale && dmax < d2 * 1.1) {
-	    // fudge a little extra for rounding
-	    dmax = d2 * 1.10001;
+	model.add(d1, d2);
+    }
+
+    /**
+     * Add arrays of data to the strip chart, oldest first. The chart is
+     * rescaled and repainted once, after all the data is added.
+     *
+     * @param src1 the array containing the data for the first series
+     * @param src2 the array containing the data for the second series
+     * @param off the offset in the arrays of the first data point
+     * @param len the number of data points to add
+     */
+    public void add(final double[] src1, final double[] src2, final int off,
+		final int len) {
+	model.add(src1, src2, off, len);
+    }
+
+    /**
+     * Add the remaining data in a pair of buffers to the strip chart,
+     * oldest first. The chart is rescaled and repainted once, after all the
+     * data is added.
+     *
+     * @param buf1 the buffer containing the data for the first series
+     * @param buf2 the buffer containing the data for the second series
+     */
+    public void add(final DoubleBuffer buf1, final DoubleBuffer buf2) {
+	model.add(buf1, buf2);
+    }
+
+    /**
+     * Save the data, scale, and style of this chart to a channel.
+     *
+     * @param ch the channel to write to
+     *
+     * @throws IOException if the state can't be written
+     *
+     * @see ChartState
+     */
+    public void saveState(final WritableByteChannel ch) throws IOException {
+	new ChartState(model, style, autoscale, policy, dmax).write(ch);
+    }
+
+    /**
+     * Restore the data, scale, and style of this chart from a channel, as
+     * saved by saveState(). The chart is given a new model holding the
+     * saved data.
+     *
+     * @param ch the channel to read from
+     *
+     * @throws IOException if a valid state can't be read
+     */
+    public void restoreState(final ReadableByteChannel ch)
+		throws IOException {
+	ChartState state = ChartState.read(ch);
+	style = state.getStyle();
+	autoscale = state.isAutoscale();
+	policy = state.getPolicy();
+	if (!autoscale) {
+	    dmax = state.getMax();
 	}
-	ncur++;
-	if (ncur == nsize) {
-	    // wrap back to the beginning
-	    ncur = 0;
+	setModel(state.getModel());
+    }
+
+    /*
+     * Set the vertical range worked out from the data, counting the change
+     * if it's different.
+     */
+    private void setScale(final double ndmax) {
+	if (ndmax != dmax && ChartMetrics.isEnabled()) {
+	    getMetrics().rescaled(dmax, ndmax);
 	}
-	values1[ncur] = d1;
-	values2[ncur] = d2;
-	repaint();
+	dmax = ndmax;
     }
 
     @Override
     public void paint(final Graphics g) {
-	Graphics2D g2 = (Graphics2D) g;
-	Dimension d = getSize();
+	if (ChartMetrics.isEnabled()) {
+	    long start = System.nanoTime();
+	    ndrawn = 0;
+	    paintChart((Graphics2D) g);
+	    getMetrics().painted(System.nanoTime() - start, ndrawn);
+	} else {
+	    paintChart((Graphics2D) g);
+	}
+    }
+
+    /*
+     * Paint the chart, keeping count of the data points drawn.
+     */
+    private void paintChart(final Graphics2D g2) {
+	// the scale may be changed by another thread at any time, so read
+	// it once and use it for the whole paint
+	double scale = dmax;
+	int iw = getWidth();
+	int ih = getHeight();
+
+	int nsize = model.getSize();
+	if (iw > 0 && nsize > iw) {
+	    // more data than pixels, so reduce the data to fit
+	    paintDecimated(g2, iw, ih, scale);
+	    return;
+	}
+	if (pixels == null) {
+	    pixels = new PixelCache();
+	}
+	long total = pixels.update(model, ih, ih, scale);
+	if (incremental) {
+	    if (scroller == null) {
+		scroller = new ScrollRenderer(this::paintColumns, true);
+	    }
+	    scroller.paint(g2, iw, ih, bgcolor, nsize, total, scale,
+			style);
+	    return;
+	}
 
-	double h = d.height;
-	double w = d.width;
 	g2.setPaint(bgcolor);
-	g2.fill(new Rectangle2D.Double(0.0d, 0.0d, w, h));
+	g2.fillRect(0, 0, iw, ih);
 
-	double x = w;
-	double dx = w / ((double) nsize);
+	paintColumns(g2, iw, ih, scale, 0, (int) Math.min(total, nsize));
+    }
+
+    /*
+     * Draw the chart one pixel column at a time, when there are more data
+     * points than pixels.
+     */
+    private void paintDecimated(final Graphics2D g2, final int iw,
+		final int ih, final double scale) {
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, iw, ih);
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(1.0);
+	if (envelope == null) {
+	    envelope = new ColumnEnvelope(2);
+	}
+	envelope.update(model, iw);
+	ndrawn += iw;
+	double h = ih;
+
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    solid.begin(2, iw, h);
+	    for (int age = 0; age < iw; age++) {
+		solid.column(iw - age - 1.0, 1.0);
+		boolean empty = envelope.isEmpty(age);
+		for (int s = 0; s < 2; s++) {
+		    solid.top(s, empty ? h
+			: h - h * envelope.getMax(s, age) / scale);
+		}
+	    }
+	    paintSolid(g2);
+	    return;
+	}
 
 	// first paint the 2nd data point in the background
 	g2.setPaint(fgcolor2);
+	paintEnvelope(g2, iw, h, scale, 1);
+
+	// now paint the 1st data point in the foreground
+	g2.setPaint(fgcolor1);
+	paintEnvelope(g2, iw, h, scale, 0);
+    }
+
+    /*
+     * Draw one channel of the envelope, covering the range from the
+     * minimum to the maximum of each column.
+     */
+    private void paintEnvelope(final Graphics2D g2, final int iw,
+		final double h, final double scale, final int channel) {
+	for (int age = 0; age < iw; age++) {
+	    if (envelope.isEmpty(age)) {
+		continue;
+	    }
+	    double hh = h * envelope.getMax(channel, age) / scale;
+	    double dh = Math.max(hh - h * envelope.getMin(channel, age) / scale,
+			0.0) + 1.0;
+	    filler.fill(g2, iw - age - 1.0, h - hh, 1.0, dh);
+	}
+    }
+
+    /*
+     * Fill both series once their tops have been built, and outline
+     * the 2nd series where the 1st hides it.
+     */
+    private void paintSolid(final Graphics2D g2) {
+	// first paint the 2nd data point in the background
+	g2.setPaint(fgcolor2);
+	solid.fill(g2, 1);
+	// now paint the 1st data point in the foreground
+	g2.setPaint(fgcolor1);
+	solid.fill(g2, 0);
+	// draw a line of the background where it's hidden
+	g2.setPaint(fgcolor2);
+	solid.outline(g2, 1);
+    }
+
+    /*
+     * Draw data points from index from up to n - 1 of the cached data, with
+     * the last at the right hand edge of the chart.
+     */
+    private void paintColumns(final Graphics2D g2, final double w,
+		final double h, final double scale, final int from,
+		final int n) {
+	int nseries = model.getSeriesCount();
+	float[] ys = pixels.getPixels();
+	double x = w;
+	double dx = w / ((double) model.getSize());
+	if (filler == null) {
+	    filler = new ColumnFiller();
+	}
+	filler.setColumnWidth(dx);
+
+	if (style == STYLE_CONNECTED) {
+	    if (liner == null) {
+		liner = new LinePainter();
+	    }
+	    liner.setGeometry(w, h, model.getSize(), scale);
+	    // the 2nd series in the background, then the 1st in front
+	    g2.setPaint(fgcolor2);
+	    liner.drawPixels(g2, ys, nseries, 1, from, n);
+	    g2.setPaint(fgcolor1);
+	    ndrawn += liner.drawPixels(g2, ys, nseries, 0, from, n);
+	    return;
+	}
+	ndrawn += n - from;
+
 	/*
 	 * increment x, use current values as y
-	 * start at the right, work our way back through the array
-	 * from the current position
+	 * start at the right, work our way back through the data
+	 * from the most recent value
 	 */
-	for (int i = ncur; i >= 0; i--) {
-	    x -= dx;
-	    double hh = h * values2[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+	if (style == STYLE_SOLID) {
+	    if (solid == null) {
+		solid = new SolidPainter();
+	    }
+	    // the outline into the oldest column crosses the column before,
+	    // so take that in too; it's clipped away if not wanted
+	    int start = Math.max(from - 1, 0);
+	    solid.begin(2, n - start, h);
+	    for (int i = n - 1; i >= start; i--) {
+		x -= dx;
+		solid.column(x, dx);
+		solid.top(0, ys[i * nseries]);
+		solid.top(1, ys[i * nseries + 1]);
+	    }
+	    paintSolid(g2);
+	    return;
 	}
-	/*
-	 * Now go from the end of the array back to the current position
-	 */
-	for (int i = nsize - 1; i > ncur; i--) {
+
+	// first paint the 2nd data point in the background
+	g2.setPaint(fgcolor2);
+	for (int i = n - 1; i >= from; i--) {
 	    x -= dx;
-	    double hh = h * values2[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+	    filler.fill(g2, x, ys[i * nseries + 1], dx, dx);
 	}
 
 	// now paint the 1st data point in the foreground
 	g2.setPaint(fgcolor1);
 	x = w;
-	for (int i = ncur; i >= 0; i--) {
+	for (int i = n - 1; i >= from; i--) {
 	    x -= dx;
-	    double hh = h * values1[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+	    filler.fill(g2, x, ys[i * nseries], dx, dx);
 	}
-	for (int i = nsize - 1; i > ncur; i--) {
-	    x -= dx;
-	    double hh = h * values1[i] / dmax;
-	    double dh = (style == STYLE_LINE) ? dx : hh;
-	    g2.fill(new Rectangle2D.Double(x, h - hh, dx, dh));
+    }
+
+    /*
+     * Update the chart when data is added to the model. Each model we're
+     * given gets a new listener, which only uses that model and its
+     * scaler, so a listener still running when setModel swaps the model
+     * never mixes the old and the new.
+     */
+    private final class ModelListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The model we listen to.
+	 */
+	private final StripChartModel lmodel;
+	/**
+	 * Works out the vertical range from the data.
+	 */
+	private final AutoScaler scaler;
+	/**
+	 * The total number of data points in the model when we last looked.
+	 */
+	private long nseen;
+
+	ModelListener(final StripChartModel nmodel,
+		final AutoScaler nscaler) {
+	    lmodel = nmodel;
+	    scaler = nscaler;
+	    nseen = nmodel.getTotal();
 	}
 
-	// if solid, draw a line of the background where it's hidden
-	if (style == STYLE_SOLID) {
-	    g2.setPaint(fgcolor2);
-	    x = w;
-	    double dh = dx > 1.0 ? 1.0 : dx;
-	    for (int i = ncur; i >= 0; i--) {
-		x -= dx;
-		double hh = h * values2[i] / dmax;
-		g2.fill(new Rectangle2D.Double(x, h - hh, dh, dh));
+	/*
+	 * Called when data is added to the model. The scale follows the
+	 * largest value of either series currently held by the model, unless
+	 * the chart has moved on to another model.
+	 * Returns the number of data points added since we last looked.
+	 */
+	private long updateScale() {
+	    long total = lmodel.getTotal();
+	    long nadded = total - nseen;
+	    nseen = total;
+	    if (autoscale && listener == this) {
+		setScale(scaler.getScale(policy, dmax));
 	    }
-	    for (int i = nsize - 1; i > ncur; i--) {
-		x -= dx;
-		double hh = h * values2[i] / dmax;
-		g2.fill(new Rectangle2D.Double(x, h - hh, dh, dh));
+	    return nadded;
+	}
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    long nnew = updateScale();
+	    if (ChartMetrics.isEnabled()) {
+		ChartMetrics m = getMetrics();
+		m.ingested(nnew);
+		m.repaintRequested();
+	    }
+	    if (immediate) {
+		repaint();
+	    } else {
+		RepaintScheduler.getDefault().markDirty(JStripChart2.this);
 	    }
 	}
     }
@@ -0,0 +1,216 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * Draws a series of a strip chart as a connected line, joining the middle
+ * of the top of each column. The points are worked out into integer
+ * arrays that are kept and reused, and the whole series is drawn with a
+ * single call to drawPolyline, rather than one call for each data point.
+ *
+ * drawPolyline allocates a tiny array inside Java2D on every call. Drawing
+ * the same pixels as a reused path, or a segment at a time with drawLine,
+ * avoids that but is several times slower, so the one small allocation
+ * for each series is accepted.
+ */
+final class LinePainter {
+
+    /**
+     * How far off the top of the chart a point may go, so that very large
+     * values don't overflow when the line is rasterized.
+     */
+    private static final int YLIMIT = 1 << 16;
+
+    /**
+     * The x coordinates of the points.
+     */
+    private int[] xs = new int[0];
+    /**
+     * The y coordinates of the points.
+     */
+    private int[] ys = new int[0];
+    /**
+     * Holds the clip bounds.
+     */
+    private final Rectangle clip = new Rectangle();
+
+    /**
+     * The width of the chart.
+     */
+    private double w;
+    /**
+     * The height of the chart.
+     */
+    private double h;
+    /**
+     * The width of each column.
+     */
+    private double dx;
+    /**
+     * The vertical scale.
+     */
+    private double scale;
+    /**
+     * Whether the value of a series is the sum of it and the series
+     * before it, for stacked charts drawing from unstacked data.
+     */
+    private boolean cumulative;
+    /**
+     * The first data point being drawn.
+     */
+    private int first;
+    /**
+     * The y coordinate of the bottom row of pixels.
+     */
+    private int ybottom;
+
+    /**
+     * Set the size and scale of the chart about to be drawn.
+     *
+     * @param nw the width of the chart
+     * @param nh the height of the chart
+     * @param nsize the number of data points the chart can show
+     * @param nscale the vertical scale
+     */
+    void setGeometry(final double nw, final double nh, final int nsize,
+		final double nscale) {
+	w = nw;
+	h = nh;
+	dx = nw / nsize;
+	scale = nscale;
+    }
+
+    /**
+     * Set whether each series is drawn at the sum of its value and the
+     * values of the series before it.
+     *
+     * @param ncumulative true to draw the running total of the series
+     */
+    void setCumulative(final boolean ncumulative) {
+	cumulative = ncumulative;
+    }
+
+    /**
+     * Draw the line for one series through data points from up to n - 1
+     * of a snapshot, where data point n - 1 is at the right hand edge of
+     * the chart. The line is joined to the data point before from, if
+     * there is one, so that a chart drawn a few columns at a time has no
+     * gaps. Only the points needed to draw inside the clip are worked
+     * out.
+     *
+     * @param g2 the Graphics2D to draw on
+     * @param data the snapshot of the data, oldest first
+     * @param stride the number of series in the snapshot
+     * @param series the series to draw
+     * @param from the first data point to draw
+     * @param n the number of data points in the snapshot
+     *
+     * @return the number of data points drawn
+     */
+    int draw(final Graphics2D g2, final double[] data, final int stride,
+		final int series, final int from, final int n) {
+	int npoints = cull(g2, from, n);
+	for (int k = 0; k < npoints; k++) {
+	    int base = (first + k) * stride;
+	    double v = data[base + series];
+	    if (cumulative) {
+		for (int s = 0; s < series; s++) {
+		    v += data[base + s];
+		}
+	    }
+	    ys[k] = pixel(h - h * v / scale);
+	}
+	return finish(g2, npoints);
+    }
+
+    /**
+     * Draw the line for one series, as for draw, from the pixel positions
+     * of the data points rather than the data.
+     *
+     * @param g2 the Graphics2D to draw on
+     * @param pixels the pixel positions of the data, oldest first
+     * @param stride the number of series in the pixel positions
+     * @param series the series to draw
+     * @param from the first data point to draw
+     * @param n the number of data points
+     *
+     * @return the number of data points drawn
+     */
+    int drawPixels(final Graphics2D g2, final float[] pixels,
+		final int stride, final int series, final int from,
+		final int n) {
+	int npoints = cull(g2, from, n);
+	for (int k = 0; k < npoints; k++) {
+	    ys[k] = pixel(pixels[(first + k) * stride + series]);
+	}
+	return finish(g2, npoints);
+    }
+
+    /*
+     * Work out which points are needed to draw inside the clip, and their
+     * x coordinates, returning the number of points.
+     */
+    private int cull(final Graphics2D g2, final int from, final int n) {
+	// left alone if there's no clip
+	clip.setBounds(0, 0, (int) Math.ceil(w), (int) Math.ceil(h));
+	g2.getClipBounds(clip);
+	// the points whose columns the clip covers, and one either side
+	double lo = Math.floor(n - (w - clip.x) / dx) - 1.0d;
+	double hi = Math.ceil(n - (w - clip.x - clip.width) / dx) + 1.0d;
+	first = (int) Math.max(Math.max(from - 1, 0), lo);
+	int end = (int) Math.min(n, hi);
+	int npoints = end - first;
+	if (npoints <= 0) {
+	    return 0;
+	}
+	if (xs.length < npoints) {
+	    xs = new int[npoints];
+	    ys = new int[npoints];
+	}
+	for (int k = 0; k < npoints; k++) {
+	    xs[k] = (int) Math.floor(w - (n - first - k - 0.5d) * dx);
+	}
+	ybottom = (int) Math.ceil(h) - 1;
+	return npoints;
+    }
+
+    /*
+     * Return the y coordinate to draw a point at.
+     */
+    private int pixel(final double y) {
+	// keep zero on the chart, rather than just below it
+	return (int) Math.max(Math.min(Math.floor(y), ybottom), -YLIMIT);
+    }
+
+    /*
+     * Draw the line through the points worked out.
+     */
+    private int finish(final Graphics2D g2, final int npoints) {
+	if (npoints > 0) {
+	    g2.drawPolyline(xs, ys, npoints);
+	}
+	return npoints;
+    }
+}
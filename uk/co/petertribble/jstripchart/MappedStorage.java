@@ -0,0 +1,235 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores values as doubles in a memory mapped file, so they survive a
+ * restart. The file starts with a header holding the shape of the model,
+ * the position of its ring buffer, and any fixed scale the model is shown
+ * with, followed by the values in the same order as they are held in the
+ * model. Storing a value is a plain memory write; the operating system
+ * takes care of writing it to the file.
+ *
+ * The file isn't locked, so it must have a single owner: only one model,
+ * in one process, may map it at a time, or they would overwrite each
+ * other's data. A file holds at most 2GB.
+ */
+final class MappedStorage implements Storage {
+
+    /**
+     * Identifies the file, "JSCM".
+     */
+    private static final int MAGIC = 0x4a53434d;
+    /**
+     * The version of the file layout.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The offset of the number of series in the header.
+     */
+    private static final int SERIES = 8;
+    /**
+     * The offset of the number of points in the header.
+     */
+    private static final int SIZE = 12;
+    /**
+     * The offset of the cursor in the header.
+     */
+    private static final int CURSOR = 16;
+    /**
+     * The offset of the count in the header.
+     */
+    private static final int COUNT = 20;
+    /**
+     * The offset of the total in the header.
+     */
+    private static final int TOTAL = 24;
+    /**
+     * The offset of the flag saying the scale is fixed in the header.
+     */
+    private static final int FIXED = 32;
+    /**
+     * The offset of the fixed scale in the header.
+     */
+    private static final int MAX = 40;
+    /**
+     * The size of the header, which keeps the values aligned.
+     */
+    private static final int HEADER = 64;
+
+    /**
+     * The whole file.
+     */
+    private final MappedByteBuffer map;
+    /**
+     * The values, which may be read from any thread.
+     */
+    private final DoubleBuffer data;
+    /**
+     * Used by the writer to store values in bulk.
+     */
+    private final DoubleBuffer writer;
+
+    /**
+     * Map a file, creating it if it doesn't exist.
+     *
+     * @param file the file to map
+     * @param nseries the number of data series held
+     * @param nsize the number of data points held for each series
+     *
+     * @throws IOException if the file can't be mapped, would be too large
+     * to map, or holds data of a different shape
+     */
+    MappedStorage(final Path file, final int nseries, final int nsize)
+		throws IOException {
+	long length = HEADER + 8L * nseries * nsize;
+	if (length > Integer.MAX_VALUE) {
+	    // a single mapping is limited to 2GB
+	    throw new IOException("Model too large to map: " + nseries
+				+ " series of " + nsize + " points");
+	}
+	try (FileChannel fc = FileChannel.open(file,
+		StandardOpenOption.CREATE, StandardOpenOption.READ,
+		StandardOpenOption.WRITE)) {
+	    long existing = fc.size();
+	    if (existing != 0 && existing != length) {
+		throw new IOException("Wrong size for model in " + file);
+	    }
+	    map = fc.map(FileChannel.MapMode.READ_WRITE, 0, length);
+	    map.order(ByteOrder.LITTLE_ENDIAN);
+	    if (existing == 0) {
+		map.putInt(0, MAGIC);
+		map.putInt(4, VERSION);
+		map.putInt(SERIES, nseries);
+		map.putInt(SIZE, nsize);
+		setState(-1, 0, 0L);
+	    } else if (map.getInt(0) != MAGIC
+		    || map.getInt(4) != VERSION
+		    || map.getInt(SERIES) != nseries
+		    || map.getInt(SIZE) != nsize
+		    || getCursor() < -1 || getCursor() >= nsize
+		    || getCount() < 0 || getCount() > nsize) {
+		throw new IOException("Invalid model in " + file);
+	    }
+	}
+	map.position(HEADER);
+	data = map.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	writer = data.duplicate();
+    }
+
+    /**
+     * Return the saved position of the most recent data point.
+     *
+     * @return the saved cursor
+     */
+    int getCursor() {
+	return map.getInt(CURSOR);
+    }
+
+    /**
+     * Return the saved number of data points held.
+     *
+     * @return the saved count
+     */
+    int getCount() {
+	return map.getInt(COUNT);
+    }
+
+    /**
+     * Return the saved number of data points ever added.
+     *
+     * @return the saved total
+     */
+    long getTotal() {
+	return map.getLong(TOTAL);
+    }
+
+    /**
+     * Return the saved fixed scale.
+     *
+     * @return the fixed scale, or NaN if the scale isn't fixed
+     */
+    double getMax() {
+	return (map.getInt(FIXED) == 0) ? Double.NaN : map.getDouble(MAX);
+    }
+
+    /**
+     * Save the fixed scale.
+     *
+     * @param dmax the fixed scale, or NaN if the scale isn't fixed
+     */
+    void setMax(final double dmax) {
+	if (Double.isNaN(dmax)) {
+	    map.putInt(FIXED, 0);
+	} else {
+	    map.putDouble(MAX, dmax);
+	    map.putInt(FIXED, 1);
+	}
+    }
+
+    @Override
+    public void setState(final int cur, final int count, final long total) {
+	map.putInt(CURSOR, cur);
+	map.putInt(COUNT, count);
+	map.putLong(TOTAL, total);
+    }
+
+    @Override
+    public double get(final int i) {
+	return data.get(i);
+    }
+
+    @Override
+    public void set(final int i, final double v) {
+	data.put(i, v);
+    }
+
+    @Override
+    public void get(final int i, final double[] dest, final int off,
+		final int len) {
+	// readers can't share a position, so read one value at a time
+	for (int j = 0; j < len; j++) {
+	    dest[off + j] = data.get(i + j);
+	}
+    }
+
+    @Override
+    public void set(final int i, final double[] src, final int off,
+		final int len) {
+	writer.position(i);
+	writer.put(src, off, len);
+    }
+
+    @Override
+    public void set(final int i, final DoubleBuffer src, final int len) {
+	for (int j = 0; j < len; j++) {
+	    data.put(i + j, src.get());
+	}
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+/**
+ * Holds the vertical pixel position of each value in a model, so that a
+ * chart repainted without new data or a change of scale does no
+ * arithmetic on the data at all.
+ *
+ * The positions are held oldest first, with those for each point stored
+ * together as in a snapshot of the model. When new data arrive, only the
+ * new points are fetched from the model, into a buffer just big enough
+ * for them, and worked out; the rest are moved along. If the height or
+ * scale of the chart changes, or a lot of data has arrived, the whole
+ * model is fetched again straight into the positions and worked out in
+ * place, so no second copy of the data is kept. The positions are held as
+ * floats, which is ample for a pixel, so the cache takes 4 bytes for each
+ * value.
+ *
+ * Each chart keeps its own cache from one paint to the next, so a repaint
+ * with no new data, such as when the chart is uncovered, only draws. The
+ * cache stays valid until the model, the height of the chart, or the
+ * scale changes, and a chart invalidates it when it's given a new model.
+ */
+final class PixelCache {
+
+    /**
+     * The model the data came from.
+     */
+    private StripChartModel model;
+    /**
+     * The number of series in the model.
+     */
+    private int nseries;
+    /**
+     * The number of data points the model holds.
+     */
+    private int nsize;
+    /**
+     * The pixel positions, oldest first.
+     */
+    private float[] pixels = new float[0];
+    /**
+     * Holds the new data fetched from the model, grown as needed.
+     */
+    private float[] fresh = new float[0];
+    /**
+     * The number of data points held.
+     */
+    private int count;
+    /**
+     * The model's total when the data were fetched, or -1 if we need to
+     * start over.
+     */
+    private long ntotal = -1;
+    /**
+     * The pixel position of zero.
+     */
+    private double base;
+    /**
+     * The number of pixels from zero to the top of the scale.
+     */
+    private double range;
+    /**
+     * The vertical scale.
+     */
+    private double scale;
+
+    /**
+     * Bring the cache up to date with the model. The pixel position of a
+     * value v is base - range * v / scale.
+     *
+     * @param nmodel the StripChartModel holding the data
+     * @param nbase the pixel position of zero
+     * @param nrange the number of pixels from zero to the top of the scale
+     * @param nscale the vertical scale
+     *
+     * @return the total number of data points ever added to the model, as
+     * returned by its snapshot method
+     */
+    long update(final StripChartModel nmodel, final double nbase,
+		final double nrange, final double nscale) {
+	if (nmodel != model || nmodel.getSize() != nsize
+		|| nmodel.getSeriesCount() != nseries) {
+	    model = nmodel;
+	    nsize = model.getSize();
+	    nseries = model.getSeriesCount();
+	    pixels = new float[nsize * nseries];
+	    fresh = new float[0];
+	    ntotal = -1;
+	}
+	if (nbase != base || nrange != range || nscale != scale) {
+	    base = nbase;
+	    range = nrange;
+	    scale = nscale;
+	    ntotal = -1;
+	}
+	long total = model.getTotal();
+	if (total != ntotal) {
+	    fetch(total);
+	}
+	return ntotal;
+    }
+
+    /*
+     * The most new data points worth fetching on their own; beyond this
+     * it's as cheap to fetch everything again.
+     */
+    private int maxFresh() {
+	return nsize / 4;
+    }
+
+    /*
+     * Fetch the data added since we last looked and work out where it
+     * goes, or fetch everything again if that's simpler.
+     */
+    private void fetch(final long total) {
+	long want = (ntotal < 0 || total < ntotal) ? nsize : total - ntotal;
+	long got = -1;
+	while (want <= maxFresh()) {
+	    if (fresh.length < want * nseries) {
+		fresh = new float[(int) want * nseries];
+	    }
+	    got = model.snapshot(fresh, (int) want);
+	    // more data may have arrived since we asked
+	    if (got - ntotal <= want) {
+		break;
+	    }
+	    want = got - ntotal;
+	}
+	if (want > maxFresh()) {
+	    // start again, fetching into the positions and converting there
+	    got = model.snapshot(pixels, nsize);
+	    count = (int) Math.min(got, nsize);
+	    ntotal = got;
+	    convert(0, count);
+	    return;
+	}
+	// move the points we're keeping along to make room
+	int n = (int) Math.min(got, nsize);
+	int nnew = (int) want;
+	int nkeep = n - nnew;
+	int ndrop = count - nkeep;
+	System.arraycopy(pixels, ndrop * nseries, pixels, 0,
+			nkeep * nseries);
+	System.arraycopy(fresh, 0, pixels, nkeep * nseries, nnew * nseries);
+	count = n;
+	ntotal = got;
+	convert(nkeep, n);
+    }
+
+    /*
+     * Turn the values of data points from up to end - 1 into pixel
+     * positions, in place.
+     */
+    private void convert(final int from, final int end) {
+	for (int i = from * nseries; i < end * nseries; i++) {
+	    pixels[i] = (float) (base - range * pixels[i] / scale);
+	}
+    }
+
+    /**
+     * Return the pixel position of each value, oldest first, with the
+     * positions for each point stored together.
+     *
+     * @return the pixel positions
+     */
+    float[] getPixels() {
+	return pixels;
+    }
+
+    /**
+     * Make the next update start over and fetch all the data again.
+     */
+    void invalidate() {
+	ntotal = -1;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Component;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.Timer;
+
+/**
+ * Coalesces repaints of charts. Rather than each chart repainting as soon
+ * as data arrives, charts are marked dirty and a single timer repaints all
+ * the dirty charts together, no more often than the maximum frame rate.
+ * The timer only runs while there are charts waiting to be repainted.
+ */
+public final class RepaintScheduler {
+
+    /*
+     * A component that knows which parts of itself need repainting, so
+     * it's asked to repaint just those rather than all of itself.
+     */
+    interface PartialRepaint {
+	/**
+	 * Repaint the parts of the component that need it.
+	 */
+	void repaintDirty();
+    }
+
+    /**
+     * The default maximum frame rate, in frames per second.
+     */
+    public static final int DEFAULT_FPS = 25;
+
+    private static final RepaintScheduler DEFAULT =
+	new RepaintScheduler(DEFAULT_FPS);
+
+    /**
+     * The charts waiting to be repainted.
+     */
+    private final Set<Component> dirty = ConcurrentHashMap.newKeySet();
+    /**
+     * Whether the timer is running.
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+    /**
+     * The timer that repaints the charts, on the event dispatch thread.
+     */
+    private final Timer timer;
+
+    /**
+     * Create a new RepaintScheduler.
+     *
+     * @param fps the maximum number of frames per second
+     */
+    public RepaintScheduler(final int fps) {
+	timer = new Timer(delayFor(fps), e -> repaintDirty());
+	timer.setCoalesce(true);
+    }
+
+    /**
+     * Return the shared RepaintScheduler used by all the charts.
+     *
+     * @return the default RepaintScheduler
+     */
+    public static RepaintScheduler getDefault() {
+	return DEFAULT;
+    }
+
+    private static int delayFor(final int fps) {
+	return 1000 / Math.max(1, Math.min(fps, 1000));
+    }
+
+    /**
+     * Set the maximum frame rate.
+     *
+     * @param fps the maximum number of frames per second
+     */
+    public void setMaxFrameRate(final int fps) {
+	int delay = delayFor(fps);
+	timer.setDelay(delay);
+	timer.setInitialDelay(delay);
+    }
+
+    /**
+     * Return the maximum frame rate.
+     *
+     * @return the maximum number of frames per second
+     */
+    public int getMaxFrameRate() {
+	return 1000 / timer.getDelay();
+    }
+
+    /**
+     * Mark a chart as needing to be repainted on the next frame. May be
+     * called from any thread.
+     *
+     * @param c the Component to be repainted
+     */
+    public void markDirty(final Component c) {
+	dirty.add(c);
+	if (running.compareAndSet(false, true)) {
+	    timer.start();
+	}
+    }
+
+    /*
+     * Called by the timer, so on the event dispatch thread.
+     */
+    private void repaintDirty() {
+	if (dirty.isEmpty()) {
+	    timer.stop();
+	    running.set(false);
+	    // something may have been marked dirty as we stopped
+	    if (!dirty.isEmpty() && running.compareAndSet(false, true)) {
+		timer.start();
+	    }
+	    return;
+	}
+	Iterator<Component> iter = dirty.iterator();
+	while (iter.hasNext()) {
+	    Component c = iter.next();
+	    iter.remove();
+	    if (c instanceof PartialRepaint) {
+		((PartialRepaint) c).repaintDirty();
+	    } else {
+		c.repaint();
+	    }
+	}
+    }
+}
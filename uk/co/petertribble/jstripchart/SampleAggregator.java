@@ -0,0 +1,328 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits in front of a StripChartModel and folds the samples from a fast
+ * source into one data point per bucket, so a source that produces
+ * samples far faster than a chart can show them only costs the chart
+ * one data point, and one repaint, per bucket.
+ *
+ * A bucket holds either a fixed number of samples, or the samples that
+ * arrive in a fixed period of time. Each sample is folded in as it
+ * arrives, in constant time, and the bucket is added to the model as a
+ * single data point once it closes: for a count, when the last sample
+ * arrives; for a period, when the first sample for a later period
+ * arrives, or when flush() is called. No data point is added for a
+ * period with no samples. A series given no samples in a bucket, as when
+ * only the first series is added to, is zero in that data point.
+ *
+ * Like the model, an aggregator expects to be given data by one thread
+ * at a time.
+ */
+public final class SampleAggregator implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Each data point is the largest sample in its bucket.
+     */
+    public static final int MAXIMUM = 0;
+    /**
+     * Each data point is the mean of the samples in its bucket.
+     */
+    public static final int MEAN = 1;
+    /**
+     * Each data point is the smallest sample in its bucket.
+     */
+    public static final int MINIMUM = 2;
+    /**
+     * Each data point is the last sample in its bucket.
+     */
+    public static final int LAST = 3;
+
+    /**
+     * The model the data points are added to.
+     */
+    private final StripChartModel model;
+    /**
+     * How the samples in a bucket are combined.
+     */
+    private final int mode;
+    /**
+     * The number of samples in a bucket, or zero if buckets are timed.
+     */
+    private final int nsamples;
+    /**
+     * The length of a bucket in nanoseconds, or zero if buckets are
+     * counted.
+     */
+    private final long period;
+    /**
+     * The values for the bucket being built, one for each series.
+     */
+    private final double[] column;
+    /**
+     * How many samples each series has in the bucket being built.
+     */
+    private final int[] counts;
+    /**
+     * How many samples the bucket being built has so far.
+     */
+    private int count;
+    /**
+     * The number of the period the bucket being built covers.
+     */
+    private long nbucket;
+
+    /**
+     * Create a new SampleAggregator, adding a data point to the model for
+     * every given number of samples.
+     *
+     * @param nmodel the StripChartModel to add data points to
+     * @param nmode how the samples are combined, one of MAXIMUM, MEAN,
+     * MINIMUM, or LAST
+     * @param samples the number of samples in each data point
+     *
+     * @throws IllegalArgumentException if the mode isn't one of those
+     * listed, or samples isn't positive
+     */
+    public SampleAggregator(final StripChartModel nmodel, final int nmode,
+			final int samples) {
+	checkMode(nmode);
+	if (samples < 1) {
+	    throw new IllegalArgumentException("samples must be positive");
+	}
+	model = nmodel;
+	mode = nmode;
+	nsamples = samples;
+	period = 0L;
+	column = new double[model.getSeriesCount()];
+	counts = new int[column.length];
+    }
+
+    /**
+     * Create a new SampleAggregator, adding a data point to the model for
+     * every period of time that has samples. Nothing happens when a period
+     * ends: its bucket only closes when a sample for a later period
+     * arrives, or when flush() is called, so if the source goes quiet the
+     * last bucket waits until one of those.
+     *
+     * @param nmodel the StripChartModel to add data points to
+     * @param nmode how the samples are combined, one of MAXIMUM, MEAN,
+     * MINIMUM, or LAST
+     * @param duration the length of time each data point covers
+     * @param unit the unit of the duration
+     *
+     * @throws IllegalArgumentException if the mode isn't one of those
+     * listed, or duration isn't positive
+     */
+    public SampleAggregator(final StripChartModel nmodel, final int nmode,
+			final long duration, final TimeUnit unit) {
+	checkMode(nmode);
+	long nperiod = unit.toNanos(duration);
+	if (nperiod < 1L) {
+	    throw new IllegalArgumentException("duration must be positive");
+	}
+	model = nmodel;
+	mode = nmode;
+	nsamples = 0;
+	period = nperiod;
+	column = new double[model.getSeriesCount()];
+	counts = new int[column.length];
+    }
+
+    private static void checkMode(final int nmode) {
+	if (nmode < MAXIMUM || nmode > LAST) {
+	    throw new IllegalArgumentException("Invalid mode " + nmode);
+	}
+    }
+
+    /**
+     * Return the model the data points are added to.
+     *
+     * @return the StripChartModel
+     */
+    public StripChartModel getModel() {
+	return model;
+    }
+
+    /**
+     * Add a sample to the first series.
+     *
+     * @param d the sample to add
+     */
+    public void add(final double d) {
+	begin(now());
+	fold(0, d);
+	end();
+    }
+
+    /**
+     * Add a sample to the first two series.
+     *
+     * @param d1 the sample for the first series
+     * @param d2 the sample for the second series
+     *
+     * @throws IllegalArgumentException if the model has only one series
+     */
+    public void add(final double d1, final double d2) {
+	if (column.length < 2) {
+	    throw new IllegalArgumentException("Model has only one series");
+	}
+	begin(now());
+	fold(0, d1);
+	fold(1, d2);
+	end();
+    }
+
+    /**
+     * Add a sample to every series, with the values for each series
+     * taken in order from the given array, starting at the given offset.
+     *
+     * @param src the array containing the samples to add
+     * @param off the offset in the array of the sample for the first
+     * series
+     *
+     * @throws IllegalArgumentException if the array doesn't hold a sample
+     * for every series starting at the offset
+     */
+    public void addColumn(final double[] src, final int off) {
+	addColumnAt(now(), src, off);
+    }
+
+    /**
+     * Add a sample to every series, taken at the given time rather than
+     * now. For counted buckets the time is ignored. Times are in the
+     * same units as System.nanoTime(), and must not go backwards.
+     *
+     * @param time the time the sample was taken, in nanoseconds
+     * @param src the array containing the samples to add
+     * @param off the offset in the array of the sample for the first
+     * series
+     *
+     * @throws IllegalArgumentException if the array doesn't hold a sample
+     * for every series starting at the offset
+     */
+    public void addColumnAt(final long time, final double[] src,
+		final int off) {
+	// check first, so a bad call can't leave a bucket half folded
+	if (off < 0 || off + column.length > src.length) {
+	    throw new IllegalArgumentException("Array of length " + src.length
+		+ " doesn't hold " + column.length + " values from offset "
+		+ off);
+	}
+	begin(time);
+	for (int s = 0; s < column.length; s++) {
+	    fold(s, src[off + s]);
+	}
+	end();
+    }
+
+    /**
+     * Add the bucket being built to the model now, if it has any
+     * samples, rather than waiting for it to close. This is useful for
+     * timed buckets when the source goes quiet.
+     */
+    public void flush() {
+	if (count > 0) {
+	    publish();
+	}
+    }
+
+    /*
+     * The time now, which we only need to know for timed buckets.
+     */
+    private long now() {
+	return (period == 0L) ? 0L : System.nanoTime();
+    }
+
+    /*
+     * Get ready to fold in a sample taken at the given time, closing the
+     * current bucket if the sample belongs in a later one.
+     */
+    private void begin(final long time) {
+	if (period == 0L) {
+	    return;
+	}
+	long b = Math.floorDiv(time, period);
+	if (count > 0 && b != nbucket) {
+	    publish();
+	}
+	nbucket = b;
+    }
+
+    /*
+     * Fold one value into the bucket being built.
+     */
+    private void fold(final int series, final double d) {
+	if (counts[series]++ == 0) {
+	    column[series] = d;
+	    return;
+	}
+	switch (mode) {
+	case MAXIMUM:
+	    column[series] = Math.max(column[series], d);
+	    break;
+	case MEAN:
+	    column[series] += d;
+	    break;
+	case MINIMUM:
+	    column[series] = Math.min(column[series], d);
+	    break;
+	default:
+	    column[series] = d;
+	    break;
+	}
+    }
+
+    /*
+     * Count the sample just folded in, closing the bucket if it's full.
+     */
+    private void end() {
+	count++;
+	if (count == nsamples) {
+	    publish();
+	}
+    }
+
+    /*
+     * Add the bucket being built to the model, and start a new one. Each
+     * series is averaged over its own samples, and a series with none is
+     * zero, rather than left holding the last bucket's value.
+     */
+    private void publish() {
+	for (int s = 0; s < column.length; s++) {
+	    if (counts[s] == 0) {
+		column[s] = 0.0d;
+	    } else if (mode == MEAN) {
+		column[s] /= counts[s];
+	    }
+	    counts[s] = 0;
+	}
+	count = 0;
+	model.addColumn(column, 0);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_SOLID;
+import static uk.co.petertribble.jstripchart.JStripChart.STYLE_CONNECTED;
+
+/**
+ * Renders a strip chart incrementally. The chart is kept in an offscreen
+ * image, and when new data arrives the image is shifted left and only the
+ * new columns are drawn. The whole chart is only redrawn if the size,
+ * scale, or style changes. The image, and the graphics that draw on it,
+ * are kept from one paint to the next, and a paint with no new data just
+ * draws the image.
+ *
+ * This only works if each data point maps to a whole number of device
+ * pixels; otherwise the chart is drawn in full every time.
+ */
+final class ScrollRenderer {
+
+    /**
+     * Draws the given range of columns of a chart.
+     */
+    interface ColumnPainter {
+	/**
+	 * Draw data points from index from up to n - 1 of the snapshot, where
+	 * data point n - 1 is at the right hand edge of the chart.
+	 *
+	 * @param g2 the Graphics2D to draw on
+	 * @param w the width of the chart
+	 * @param h the height of the chart
+	 * @param scale the value at the top of the chart
+	 * @param from the first data point to draw
+	 * @param n the number of data points in the snapshot
+	 */
+	void paintColumns(Graphics2D g2, double w, double h, double scale,
+			int from, int n);
+    }
+
+    /**
+     * The transform of a newly created image graphics.
+     */
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    private final ColumnPainter painter;
+    /**
+     * Whether solid charts have an outline that joins adjacent columns.
+     */
+    private final boolean outlined;
+
+    /**
+     * The offscreen image, in device pixels.
+     */
+    private BufferedImage image;
+    /**
+     * Draws on the image in device pixels, kept as long as the image.
+     */
+    private Graphics2D ig;
+    /**
+     * Draws the newest columns on the image, clipped to them.
+     */
+    private Graphics2D sg;
+    /**
+     * The width of the clip of sg, in device pixels.
+     */
+    private int swidth;
+    /**
+     * Redraws the oldest column on the image, clipped to it, created when
+     * first needed.
+     */
+    private Graphics2D lg;
+    /**
+     * The width of the clip of lg, in device pixels.
+     */
+    private int lwidth;
+    /**
+     * The horizontal scale the image was created for.
+     */
+    private double isx;
+    /**
+     * The vertical scale the image was created for.
+     */
+    private double isy;
+    /**
+     * Whether the image contents are valid.
+     */
+    private boolean valid;
+    /**
+     * The model's total when the image was last drawn.
+     */
+    private long ntotal;
+    /**
+     * The scale the image was drawn at.
+     */
+    private double dmax;
+    /**
+     * The style the image was drawn with.
+     */
+    private int style;
+
+    /**
+     * Create a new ScrollRenderer.
+     *
+     * @param npainter the ColumnPainter that draws the chart data
+     */
+    ScrollRenderer(final ColumnPainter npainter) {
+	this(npainter, false);
+    }
+
+    /**
+     * Create a new ScrollRenderer.
+     *
+     * @param npainter the ColumnPainter that draws the chart data
+     * @param noutlined true if solid charts are drawn with an outline that
+     * joins adjacent columns
+     */
+    ScrollRenderer(final ColumnPainter npainter, final boolean noutlined) {
+	painter = npainter;
+	outlined = noutlined;
+    }
+
+    /*
+     * Whether what's drawn for a column spills into the column before.
+     */
+    private boolean joined(final int nstyle) {
+	return nstyle == STYLE_CONNECTED
+	    || (outlined && nstyle == STYLE_SOLID);
+    }
+
+    /**
+     * Force the next paint to redraw the whole chart.
+     */
+    void invalidate() {
+	valid = false;
+    }
+
+    /**
+     * Paint the chart.
+     *
+     * @param g2 the Graphics2D to paint on
+     * @param w the width of the chart
+     * @param h the height of the chart
+     * @param bgcolor the background color
+     * @param nsize the number of data points the chart can show
+     * @param total the total number of data points in the snapshot
+     * @param nmax the vertical scale of the chart
+     * @param nstyle the style of the chart
+     */
+    void paint(final Graphics2D g2, final int w, final int h,
+		final Color bgcolor, final int nsize, final long total,
+		final double nmax, final int nstyle) {
+	int n = (int) Math.min(total, nsize);
+	AffineTransform at = g2.getTransform();
+	double sx = at.getScaleX();
+	double sy = at.getScaleY();
+	double pdx = w * sx / nsize;
+	if (w <= 0 || h <= 0 || pdx != Math.rint(pdx) || at.getShearX() != 0.0
+		|| at.getShearY() != 0.0) {
+	    // can't shift by whole pixels, so draw everything directly
+	    valid = false;
+	    g2.setPaint(bgcolor);
+	    g2.fillRect(0, 0, w, h);
+	    painter.paintColumns(g2, w, h, nmax, 0, n);
+	    return;
+	}
+	int iw = (int) Math.ceil(w * sx);
+	int ih = (int) Math.ceil(h * sy);
+	if (image == null || image.getWidth() != iw
+		|| image.getHeight() != ih || sx != isx || sy != isy) {
+	    newImage(iw, ih, sx, sy);
+	}
+	long delta = total - ntotal;
+	if (!valid || nmax != dmax || nstyle != style || delta < 0
+		|| delta >= n) {
+	    ig.setPaint(bgcolor);
+	    ig.fillRect(0, 0, iw, ih);
+	    ig.scale(sx, sy);
+	    painter.paintColumns(ig, w, h, nmax, 0, n);
+	    ig.setTransform(IDENTITY);
+	} else if (delta > 0) {
+	    int shift = (int) (delta * pdx);
+	    int from = n - (int) delta;
+	    int redraw = shift;
+	    if (joined(nstyle) && from > 0) {
+		// the line to the first new point crosses the column before
+		from--;
+		redraw += (int) pdx;
+	    }
+	    ig.copyArea(shift, 0, iw - shift, ih, -shift, 0);
+	    if (joined(nstyle) && total > n) {
+		// the oldest points have gone, so the line coming in to
+		// what's now the first column has to go too
+		redrawOldest(w, h, bgcolor, n, pdx);
+	    }
+	    ig.setPaint(bgcolor);
+	    ig.fillRect(iw - redraw, 0, redraw, ih);
+	    if (redraw != swidth) {
+		// only clip afresh when the width changes, as it allocates
+		sg.setTransform(IDENTITY);
+		sg.setClip(iw - redraw, 0, redraw, ih);
+		sg.scale(sx, sy);
+		swidth = redraw;
+	    }
+	    painter.paintColumns(sg, w, h, nmax, from, n);
+	}
+	valid = true;
+	ntotal = total;
+	dmax = nmax;
+	style = nstyle;
+	g2.drawImage(image, 0, 0, w, h, null);
+    }
+
+    /*
+     * Create a new offscreen image, and the graphics that draw on it.
+     */
+    private void newImage(final int iw, final int ih, final double sx,
+		final double sy) {
+	if (ig != null) {
+	    ig.dispose();
+	    sg.dispose();
+	}
+	if (lg != null) {
+	    lg.dispose();
+	    lg = null;
+	}
+	image = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_RGB);
+	ig = image.createGraphics();
+	sg = image.createGraphics();
+	swidth = -1;
+	isx = sx;
+	isy = sy;
+	valid = false;
+    }
+
+    /*
+     * Redraw the oldest column, which only depends on the oldest two data
+     * points. Those two are drawn as if they were all the data there is,
+     * which puts them at the right hand edge, and shifted left by a whole
+     * number of pixels to where they belong, so this costs the same
+     * however wide the chart is.
+     */
+    private void redrawOldest(final double w, final double h,
+		final Color bgcolor, final int n, final double pdx) {
+	int lw = (int) pdx;
+	if (lg == null) {
+	    lg = image.createGraphics();
+	    lwidth = -1;
+	}
+	lg.setTransform(IDENTITY);
+	if (lw != lwidth) {
+	    lg.setClip(0, 0, lw, image.getHeight());
+	    lwidth = lw;
+	}
+	ig.setPaint(bgcolor);
+	ig.fillRect(0, 0, lw, image.getHeight());
+	lg.translate(-(n - 2) * pdx, 0.0);
+	lg.scale(isx, isy);
+	painter.paintColumns(lg, w, h, dmax, 0, 2);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+/**
+ * Stores values quantized to 16 bits, using a quarter of the memory of
+ * doubles. Values are stored as multiples of a power of two, which starts
+ * small and is increased, with the values already held scaled down to
+ * match, whenever a value is too large to fit. Once the large values have
+ * been overwritten it comes back down. So each value is held to a
+ * resolution of about 1 part in 32767 of the largest value held when it
+ * was stored, which is finer than a chart can show. Values that aren't
+ * finite are stored as zero.
+ */
+final class ShortStorage implements Storage, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest magnitude we store.
+     */
+    private static final double LIMIT = Short.MAX_VALUE;
+    /**
+     * Stored values at least this large would no longer fit if the
+     * exponent were one smaller.
+     */
+    private static final int TOP = 1 << 14;
+    /**
+     * The exponent we start with.
+     */
+    private static final int MIN_EXPONENT = -32;
+
+    /**
+     * The scaled values.
+     */
+    private final short[] data;
+    /**
+     * The values are stored as multiples of 2 to this power.
+     */
+    private int exponent = MIN_EXPONENT;
+    /**
+     * The value of one unit of the stored values.
+     */
+    private double step = Math.scalb(1.0d, MIN_EXPONENT);
+    /**
+     * The inverse of the step.
+     */
+    private double inv = Math.scalb(1.0d, -MIN_EXPONENT);
+    /**
+     * The number of stored values that stop the exponent being reduced.
+     */
+    private int npeak;
+
+    /**
+     * Create a new ShortStorage.
+     *
+     * @param n the number of values to hold
+     */
+    ShortStorage(final int n) {
+	data = new short[n];
+    }
+
+    @Override
+    public double get(final int i) {
+	return data[i] * step;
+    }
+
+    @Override
+    public void set(final int i, final double v) {
+	// overwriting the last of the large values lets the exponent come down
+	if (isPeak(data[i])) {
+	    data[i] = 0;
+	    npeak--;
+	    if (npeak == 0) {
+		shrink();
+	    }
+	}
+	if (!Double.isFinite(v)) {
+	    data[i] = 0;
+	    return;
+	}
+	if (Math.abs(v * inv) > LIMIT) {
+	    rescale(Math.abs(v));
+	}
+	data[i] = (short) Math.round(v * inv);
+	if (isPeak(data[i])) {
+	    npeak++;
+	}
+    }
+
+    /*
+     * Whether a stored value is too large to fit with a smaller exponent.
+     */
+    private static boolean isPeak(final long d) {
+	return d >= TOP || d <= -TOP;
+    }
+
+    @Override
+    public void get(final int i, final double[] dest, final int off,
+		final int len) {
+	for (int j = 0; j < len; j++) {
+	    dest[off + j] = data[i + j] * step;
+	}
+    }
+
+    @Override
+    public void set(final int i, final double[] src, final int off,
+		final int len) {
+	for (int j = 0; j < len; j++) {
+	    set(i + j, src[off + j]);
+	}
+    }
+
+    /*
+     * Increase the exponent until the given magnitude fits, rounding the
+     * values we already hold to the new step.
+     */
+    private void rescale(final double v) {
+	int e = exponent;
+	while (v * Math.scalb(1.0d, -e) > LIMIT) {
+	    e++;
+	}
+	int shift = e - exponent;
+	for (int j = 0; j < data.length; j++) {
+	    data[j] = (shift > 62) ? 0
+		: (short) ((data[j] + (1L << (shift - 1))) >> shift);
+	}
+	setExponent(e);
+    }
+
+    /*
+     * Reduce the exponent as far as the values we hold allow, once the
+     * large values that needed it have been overwritten, so that smaller
+     * values are again held to a resolution relative to their own size.
+     * Shifting the values up loses nothing.
+     */
+    private void shrink() {
+	long max = 0;
+	for (int j = 0; j < data.length; j++) {
+	    max = Math.max(max, Math.abs((long) data[j]));
+	}
+	int shift = 0;
+	while (exponent - shift > MIN_EXPONENT
+		&& (max << (shift + 1)) <= LIMIT) {
+	    shift++;
+	}
+	if (shift == 0) {
+	    return;
+	}
+	for (int j = 0; j < data.length; j++) {
+	    data[j] <<= shift;
+	}
+	setExponent(exponent - shift);
+    }
+
+    /*
+     * Switch to a new exponent, once the values held have been scaled to
+     * match, and count the values that stop it being reduced.
+     */
+    private void setExponent(final int e) {
+	exponent = e;
+	step = Math.scalb(1.0d, e);
+	inv = Math.scalb(1.0d, -e);
+	npeak = 0;
+	for (int j = 0; j < data.length; j++) {
+	    if (isPeak(data[j])) {
+		npeak++;
+	    }
+	}
+    }
+
+    @Override
+    public void set(final int i, final DoubleBuffer src, final int len) {
+	for (int j = 0; j < len; j++) {
+	    set(i + j, src.get());
+	}
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.GeneralPath;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * Renders a sparkline in a table cell, for table columns whose values are
+ * StripChartModels. One renderer draws every row, so the only per-row
+ * cost is the model itself and the outline of its sparkline, which is
+ * kept until the model gets new data or the cell changes size. Scrolling
+ * the table therefore just redraws the saved outlines, without touching
+ * the data or allocating anything.
+ */
+public final class SparkCellRenderer extends JComponent
+	implements TableCellRenderer {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The Stroke used to draw the sparkline.
+     */
+    private static final BasicStroke STROKE = new BasicStroke(1.0f,
+			BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+    /**
+     * The color of the sparklines, or null to use the table's.
+     */
+    private final Color linecolor;
+    /**
+     * The saved outline for each model, dropped when the model is.
+     */
+    private final transient Map<StripChartModel, Outline> outlines =
+	new WeakHashMap<>();
+    /**
+     * A copy of the model data, taken when an outline is updated.
+     */
+    private transient double[] snapshot;
+
+    /**
+     * The model for the cell being rendered.
+     */
+    private transient StripChartModel model;
+    /**
+     * The background color for the cell being rendered.
+     */
+    private Color bgcolor;
+    /**
+     * The foreground color for the cell being rendered.
+     */
+    private Color fgcolor;
+
+    /**
+     * Create a SparkCellRenderer using the table's colours.
+     */
+    public SparkCellRenderer() {
+	this(null);
+    }
+
+    /**
+     * Create a SparkCellRenderer drawing sparklines in the given colour,
+     * except in selected rows.
+     *
+     * @param nlinecolor The Color to be used for the sparklines
+     */
+    public SparkCellRenderer(final Color nlinecolor) {
+	linecolor = nlinecolor;
+	setOpaque(true);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(final JTable table,
+		final Object value, final boolean isSelected,
+		final boolean hasFocus, final int row, final int column) {
+	model = (value instanceof StripChartModel)
+	    ? (StripChartModel) value : null;
+	if (isSelected) {
+	    bgcolor = table.getSelectionBackground();
+	    fgcolor = table.getSelectionForeground();
+	} else {
+	    bgcolor = table.getBackground();
+	    fgcolor = (linecolor == null) ? table.getForeground() : linecolor;
+	}
+	return this;
+    }
+
+    @Override
+    public void paint(final Graphics g) {
+	Graphics2D g2 = (Graphics2D) g;
+	int w = getWidth();
+	int h = getHeight();
+	g2.setPaint(bgcolor);
+	g2.fillRect(0, 0, w, h);
+	if (model == null) {
+	    return;
+	}
+	Outline outline = outlines.get(model);
+	if (outline == null) {
+	    outline = new Outline();
+	    outlines.put(model, outline);
+	}
+	outline.update(w, h);
+	if (outline.empty) {
+	    return;
+	}
+	g2.setPaint(fgcolor);
+	g2.setStroke(STROKE);
+	g2.draw(outline.path);
+    }
+
+    /*
+     * The following are overridden to do nothing, as the renderer is only
+     * ever used to paint cells, as DefaultTableCellRenderer does.
+     */
+
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(final long tm, final int x, final int y,
+		final int width, final int height) {
+    }
+
+    @Override
+    public void repaint(final Rectangle r) {
+    }
+
+    @Override
+    public void repaint() {
+    }
+
+    @Override
+    protected void firePropertyChange(final String propertyName,
+		final Object oldValue, final Object newValue) {
+    }
+
+    @Override
+    public void firePropertyChange(final String propertyName,
+		final boolean oldValue, final boolean newValue) {
+    }
+
+    /*
+     * The saved outline of the sparkline for one model.
+     */
+    private final class Outline {
+
+	/**
+	 * The outline of the sparkline.
+	 */
+	private final GeneralPath path = new GeneralPath();
+	/**
+	 * Whether there's no data to draw.
+	 */
+	private boolean empty;
+	/**
+	 * The model's total when the outline was made, or -1 if it hasn't
+	 * been.
+	 */
+	private long ntotal = -1L;
+	/**
+	 * The width the outline was made for.
+	 */
+	private int width;
+	/**
+	 * The height the outline was made for.
+	 */
+	private int height;
+
+	/*
+	 * Remake the outline, if the model has new data or the size has
+	 * changed. Drawn the same way as JSparkChart draws its line.
+	 */
+	private void update(final int w, final int h) {
+	    long total = model.getTotal();
+	    if (total == ntotal && w == width && h == height) {
+		return;
+	    }
+	    int nsize = model.getSize();
+	    int nseries = model.getSeriesCount();
+	    if (snapshot == null || snapshot.length < nsize * nseries) {
+		snapshot = new double[nsize * nseries];
+	    }
+	    ntotal = model.snapshot(snapshot);
+	    width = w;
+	    height = h;
+	    int n = (int) Math.min(ntotal, nsize);
+	    empty = n == 0;
+	    path.reset();
+	    if (empty) {
+		return;
+	    }
+	    double max = Double.NEGATIVE_INFINITY;
+	    for (int i = 0; i < n; i++) {
+		max = Math.max(max, snapshot[i * nseries]);
+	    }
+	    double dmax = AutoScaler.scaleFor(max);
+	    double hmax = h - 1.0d;
+	    double hrange = h - 2.0d;
+	    double x = w;
+	    double dx = x / ((double) nsize);
+	    path.moveTo((float) x,
+		(float) (hmax - hrange * snapshot[(n - 1) * nseries] / dmax));
+	    for (int i = n - 2; i >= 0; i--) {
+		x -= dx;
+		double hh = hmax - hrange * snapshot[i * nseries] / dmax;
+		path.lineTo((float) x, (float) hh);
+	    }
+	}
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Follows a StripChartModel, keeping the data in stacked form for stacked
+ * charts. As each data point arrives, the values of the series are summed
+ * cumulatively, so series s of the stacked model holds the total of series
+ * 0 to s of the source model, and the top of the stack is the last series.
+ * Painting a stacked chart then needs no arithmetic between series. The
+ * stacked data is stored the same way as the source data.
+ *
+ * The largest total in the window of the model is tracked by the stacked
+ * model's own scaler, so is always available to scale the chart. The
+ * stacked charts share one StackedModel for each source model, as they do
+ * the scaler, so however many charts show a model it's only stacked once.
+ */
+public final class StackedModel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest number of data points stacked in one go.
+     */
+    private static final int CHUNK = 256;
+
+    /**
+     * The model holding the original data.
+     */
+    private final StripChartModel source;
+    /**
+     * The model holding the stacked data.
+     */
+    private final StripChartModel stacked;
+    /**
+     * The number of series stacked.
+     */
+    private final int nseries;
+    /**
+     * Used to pass the stacked data to the stacked model, a chunk at a
+     * time.
+     */
+    private final double[] scratch;
+    /**
+     * Listens for changes to the source model.
+     */
+    private final SourceListener listener = new SourceListener();
+    /**
+     * The total number of source points seen.
+     */
+    private long nseen;
+
+    /**
+     * Create a new StackedModel, stacking all the series of the source
+     * model.
+     *
+     * @param nsource the StripChartModel holding the original data
+     */
+    public StackedModel(final StripChartModel nsource) {
+	this(nsource, nsource.getSeriesCount());
+    }
+
+    /**
+     * Create a new StackedModel, stacking the given number of series of
+     * the source model, starting with the first. Any data already in the source model is stacked straight
+     * away, from a snapshot, so this may be called from any thread.
+     *
+     * @param nsource the StripChartModel holding the original data
+     * @param series the number of series to stack
+     *
+     * @throws IllegalArgumentException if the source model doesn't hold
+     * that many series
+     */
+    public StackedModel(final StripChartModel nsource, final int series) {
+	if (series < 1 || series > nsource.getSeriesCount()) {
+	    throw new IllegalArgumentException("Can't stack " + series
+		+ " series of a model holding " + nsource.getSeriesCount());
+	}
+	source = nsource;
+	nseries = series;
+	int nsize = source.getSize();
+	stacked = new StripChartModel(nseries, nsize, source.getStorage());
+	scratch = new double[Math.min(nsize, CHUNK) * nseries];
+	// the copy only lives until it's stacked
+	int nsrc = source.getSeriesCount();
+	double[] data = new double[nsize * nsrc];
+	nseen = source.snapshot(data);
+	int n = (int) Math.min(nseen, nsize);
+	for (int i = 0; i < n; i++) {
+	    double sum = 0.0d;
+	    for (int s = 0; s < nseries; s++) {
+		sum += data[i * nsrc + s];
+		// packing the series can't overtake the values still to read
+		data[i * nseries + s] = sum;
+	    }
+	}
+	// keep the same total as the source, so columns line up
+	stacked.restore(data, n, nseen);
+	source.addChangeListener(listener);
+    }
+
+    /**
+     * Return the model holding the original data.
+     *
+     * @return the source StripChartModel
+     */
+    public StripChartModel getSource() {
+	return source;
+    }
+
+    /**
+     * Return the model holding the stacked data. This is updated, and its
+     * listeners notified, on the thread adding data to the source model.
+     *
+     * @return the stacked StripChartModel
+     */
+    public StripChartModel getModel() {
+	return stacked;
+    }
+
+    /**
+     * Return the largest total currently held by the model. Like
+     * StripChartModel.getValue(), this may only be called by the thread
+     * adding data to the source model.
+     *
+     * @return the largest total in the model
+     */
+    public double getMax() {
+	return stacked.getScaler(nseries).getMax();
+    }
+
+    /*
+     * The vertical scale to show all the totals in the model, worked out
+     * according to the given autoscale policy from the current scale.
+     */
+    double getScale(final int policy, final double current) {
+	return stacked.getScaler(nseries).getScale(policy, current);
+    }
+
+    /*
+     * As for getScale(), but from a snapshot of the stacked data, so it
+     * may be called from any thread.
+     */
+    double getSnapshotScale(final int policy, final double current) {
+	return stacked.getScaler(nseries).getSnapshotScale(policy, current);
+    }
+
+    /**
+     * Stop following the source model.
+     */
+    public void detach() {
+	source.removeChangeListener(listener);
+    }
+
+    /*
+     * Stack the data added to the source since we last looked, a chunk at
+     * a time, adding each chunk to the stacked model.
+     */
+    private void stack() {
+	long total = source.getTotal();
+	long nnew = total - nseen;
+	nseen = total;
+	int ncount = source.getCount();
+	// if we missed some, we can only stack what's still there, but the
+	// stacked total still counts them so columns line up
+	long missed = Math.max(nnew - ncount, 0L);
+	nnew -= missed;
+	int nsize = source.getSize();
+	int nchunk = scratch.length / nseries;
+	int i = source.getCursor() - (int) nnew + 1;
+	if (i < 0) {
+	    i += nsize;
+	}
+	while (nnew > 0) {
+	    int len = (int) Math.min(nnew, nchunk);
+	    int base = 0;
+	    for (int k = 0; k < len; k++) {
+		double sum = 0.0d;
+		for (int s = 0; s < nseries; s++) {
+		    sum += source.getValue(s, i);
+		    scratch[base + s] = sum;
+		}
+		base += nseries;
+		i++;
+		if (i == nsize) {
+		    i = 0;
+		}
+	    }
+	    stacked.addColumns(scratch, 0, len, missed);
+	    missed = 0L;
+	    nnew -= len;
+	}
+    }
+
+    /*
+     * Stack new data as it's added to the source model. This runs on the
+     * thread adding the data, so the stacked model has the same single
+     * writer.
+     */
+    private final class SourceListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    stack();
+	}
+    }
+}
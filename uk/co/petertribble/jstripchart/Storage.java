@@ -0,0 +1,128 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Holds the values of a StripChartModel. The values are addressed by a
+ * flat index, and may be stored more compactly than as doubles, in which
+ * case the values read back may differ slightly from those stored.
+ */
+interface Storage {
+
+    /**
+     * Return a stored value.
+     *
+     * @param i the index of the value
+     *
+     * @return the value at the given index
+     */
+    double get(int i);
+
+    /**
+     * Store a value.
+     *
+     * @param i the index of the value
+     * @param v the value to store
+     */
+    void set(int i, double v);
+
+    /**
+     * Copy stored values into an array.
+     *
+     * @param i the index of the first value to copy
+     * @param dest the array to copy the values into
+     * @param off the offset in the array to copy the first value to
+     * @param len the number of values to copy
+     */
+    void get(int i, double[] dest, int off, int len);
+
+    /**
+     * Copy stored values into an array of floats, for copies that don't
+     * need the full precision of a double.
+     *
+     * @param i the index of the first value to copy
+     * @param dest the array to copy the values into
+     * @param off the offset in the array to copy the first value to
+     * @param len the number of values to copy
+     */
+    default void get(final int i, final float[] dest, final int off,
+		final int len) {
+	for (int j = 0; j < len; j++) {
+	    dest[off + j] = (float) get(i + j);
+	}
+    }
+
+    /**
+     * Store values from an array.
+     *
+     * @param i the index to store the first value at
+     * @param src the array containing the values to store
+     * @param off the offset in the array of the first value
+     * @param len the number of values to store
+     */
+    void set(int i, double[] src, int off, int len);
+
+    /**
+     * Store values from a buffer, advancing its position past them.
+     *
+     * @param i the index to store the first value at
+     * @param src the buffer containing the values to store
+     * @param len the number of values to store
+     */
+    void set(int i, DoubleBuffer src, int len);
+
+    /**
+     * Record the position of the ring buffer after an update. This only
+     * matters for storage that persists, so by default does nothing.
+     *
+     * @param cur the position of the most recent data point
+     * @param count the number of data points held
+     * @param total the number of data points ever added
+     */
+    default void setState(final int cur, final int count, final long total) {
+    }
+
+    /**
+     * Create storage of the given type.
+     *
+     * @param type the type of storage, one of the STORAGE constants of
+     * StripChartModel
+     * @param n the number of values to hold
+     *
+     * @return the new Storage
+     */
+    static Storage create(final int type, final int n) {
+	switch (type) {
+	case StripChartModel.STORAGE_DOUBLE:
+	    return new DoubleStorage(n);
+	case StripChartModel.STORAGE_FLOAT:
+	    return new FloatStorage(n);
+	case StripChartModel.STORAGE_INT:
+	    return new IntStorage(n);
+	case StripChartModel.STORAGE_SHORT:
+	    return new ShortStorage(n);
+	default:
+	    throw new IllegalArgumentException("Invalid storage type " + type);
+	}
+    }
+}
@@ -0,0 +1,879 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.invoke.VarHandle;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+
+/**
+ * The data behind a strip chart. A model holds a fixed number of points
+ * for one or more data series in a ring buffer, so that the same data can
+ * be shown by any number of charts. Adding data to the model notifies all
+ * registered listeners, so each chart using the model will be updated.
+ * <p>
+ * Data may be added from any thread, such as a background thread
+ * collecting the data, without needing to go through the event dispatch
+ * thread. Only one thread should add data to a given model at a time. The
+ * charts take a consistent snapshot of the data when painting, using a
+ * sequence lock, so neither the writer nor the readers ever block.
+ * Listeners are notified on the thread that added the data.
+ * <p>
+ * By default the values are stored as doubles. Where memory matters more
+ * than precision, such as for models holding a lot of data, the values
+ * may instead be stored as floats, as scaled ints, which hold whole
+ * numbers such as counters exactly, or quantized to 16 bits relative to
+ * the largest value currently held, which is still finer than a chart
+ * can show. Autoscaling refers back to the stored values, so the model
+ * takes 8 bytes per point stored as doubles and 2 bytes stored as 16 bit
+ * values. A chart showing the model keeps the pixel position of each
+ * value as a float between paints, so that a repaint does no arithmetic,
+ * which adds 4 bytes per point for each chart.
+ * The values may also be kept in a memory mapped file, so that a model
+ * picks up where it left off when an application is restarted.
+ */
+public final class StripChartModel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Store the values as doubles.
+     */
+    public static final int STORAGE_DOUBLE = 0;
+    /**
+     * Store the values as floats, in half the space.
+     */
+    public static final int STORAGE_FLOAT = 1;
+    /**
+     * Store the values as scaled ints, in half the space.
+     */
+    public static final int STORAGE_INT = 2;
+    /**
+     * Store the values quantized to 16 bits, in a quarter of the space.
+     */
+    public static final int STORAGE_SHORT = 3;
+
+    /**
+     * How many series we hold.
+     */
+    private final int nseries;
+    /**
+     * How many points we save.
+     */
+    private final int nsize;
+    /**
+     * How the values are stored.
+     */
+    private final int storage;
+    /**
+     * The sequence number, odd while an update is in progress.
+     */
+    private volatile long seq;
+    /**
+     * The current position of the data.
+     */
+    private int ncur = -1;
+    /**
+     * How many points we currently have.
+     */
+    private int ncount;
+    /**
+     * How many points have ever been added.
+     */
+    private long ntotal;
+
+    /**
+     * The values, for all the series. The values for a given point are
+     * stored together, so the value for series s at position i is at
+     * index i * nseries + s.
+     */
+    private final Storage values;
+
+    /**
+     * The registered listeners.
+     */
+    private final EventListenerList listenerList = new EventListenerList();
+    /**
+     * There's only one event, as the source is always this model.
+     */
+    private final ChangeEvent changeEvent = new ChangeEvent(this);
+    /**
+     * The scalers following this model, shared by the charts showing it,
+     * indexed by the number of series shown less one. Created when first
+     * needed.
+     */
+    private transient AutoScaler[] scalers;
+    /**
+     * The stacked forms of this model, shared by the stacked charts
+     * showing it, indexed by the number of series stacked less one.
+     * Created when first needed.
+     */
+    private transient StackedModel[] stacks;
+
+    /**
+     * Create an empty model holding a single data series.
+     *
+     * @param size The number of data points to hold
+     *
+     * @throws IllegalArgumentException if size is less than 1
+     */
+    public StripChartModel(final int size) {
+	this(1, size);
+    }
+
+    /**
+     * Create an empty model holding the given number of data series.
+     *
+     * @param series The number of data series to hold
+     * @param size The number of data points to hold for each series
+     *
+     * @throws IllegalArgumentException if series or size is less than 1
+     */
+    public StripChartModel(final int series, final int size) {
+	this(series, size, STORAGE_DOUBLE);
+    }
+
+    /**
+     * Create an empty model holding the given number of data series, with
+     * the values stored in the given way.
+     *
+     * @param series The number of data series to hold
+     * @param size The number of data points to hold for each series
+     * @param nstorage How the values are stored, one of STORAGE_DOUBLE,
+     * STORAGE_FLOAT, STORAGE_INT, or STORAGE_SHORT
+     *
+     * @throws IllegalArgumentException if series or size is less than 1,
+     * or nstorage isn't a valid storage type
+     */
+    public StripChartModel(final int series, final int size,
+			final int nstorage) {
+	checkShape(series, size);
+	nseries = series;
+	nsize = size;
+	storage = nstorage;
+	values = Storage.create(storage, nseries * nsize);
+    }
+
+    /**
+     * Create a model holding the given number of data series, stored in a
+     * memory mapped file, so the data survives a restart. If the file
+     * already holds a model of the same shape, that model's data is used
+     * straight away, without being read or copied; otherwise a new file is
+     * created. The values are stored as doubles, along with any fixed
+     * scale set on a chart showing the model. A model stored in a file
+     * can't be serialized. The file isn't locked, so only one model, in
+     * one process, may use it at a time.
+     *
+     * @param file The file holding the data
+     * @param series The number of data series to hold
+     * @param size The number of data points to hold for each series
+     *
+     * @throws IOException if the file can't be mapped, would be larger
+     * than 2GB, or holds a model of a different shape
+     * @throws IllegalArgumentException if series or size is less than 1
+     */
+    public StripChartModel(final Path file, final int series,
+			final int size) throws IOException {
+	checkShape(series, size);
+	nseries = series;
+	nsize = size;
+	storage = STORAGE_DOUBLE;
+	MappedStorage mapped = new MappedStorage(file, nseries, nsize);
+	values = mapped;
+	ncur = mapped.getCursor();
+	ncount = mapped.getCount();
+	ntotal = mapped.getTotal();
+    }
+
+    /*
+     * Check that a new model holds at least one data point of one series.
+     */
+    private static void checkShape(final int series, final int size) {
+	if (series < 1) {
+	    throw new IllegalArgumentException("Invalid number of series "
+					+ series);
+	}
+	if (size < 1) {
+	    throw new IllegalArgumentException("Invalid size " + size);
+	}
+    }
+
+    /*
+     * Return the fixed scale saved with a model kept in a file, or NaN if
+     * there isn't one.
+     */
+    double getSavedMax() {
+	return (values instanceof MappedStorage)
+	    ? ((MappedStorage) values).getMax() : Double.NaN;
+    }
+
+    /*
+     * Save the fixed scale of a chart showing this model, if the model is
+     * kept in a file, so that the chart is shown the same way after a
+     * restart.
+     */
+    void setSavedMax(final double dmax) {
+	if (values instanceof MappedStorage) {
+	    ((MappedStorage) values).setMax(dmax);
+	}
+    }
+
+    /**
+     * Return the number of data series held by this model.
+     *
+     * @return the number of data series
+     */
+    public int getSeriesCount() {
+	return nseries;
+    }
+
+    /**
+     * Return the number of data points this model can hold.
+     *
+     * @return the capacity of this model
+     */
+    public int getSize() {
+	return nsize;
+    }
+
+    /**
+     * Return how the values in this model are stored.
+     *
+     * @return one of STORAGE_DOUBLE, STORAGE_FLOAT, STORAGE_INT, or
+     * STORAGE_SHORT
+     */
+    public int getStorage() {
+	return storage;
+    }
+
+    /**
+     * Return the number of data points currently held. This will be the
+     * capacity of the model once it has wrapped.
+     *
+     * @return the number of data points currently held
+     */
+    public int getCount() {
+	return ncount;
+    }
+
+    /**
+     * Return the number of data points that have ever been added to this
+     * model. A listener can compare this with the value it saw last time
+     * to find out how many new data points have been added. This may be
+     * called from any thread.
+     *
+     * @return the total number of data points added
+     */
+    public long getTotal() {
+	while (true) {
+	    long s = seq;
+	    if ((s & 1L) == 0L) {
+		long total = ntotal;
+		VarHandle.loadLoadFence();
+		if (seq == s) {
+		    return total;
+		}
+	    }
+	    Thread.onSpinWait();
+	}
+    }
+
+    /**
+     * Return the position of the most recently added data point, or -1 if
+     * no data has yet been added.
+     *
+     * @return the current position in the ring buffer
+     */
+    public int getCursor() {
+	return ncur;
+    }
+
+    /**
+     * Return a value from the given data series. This should only be called
+     * from the thread adding data, such as from a listener; other threads
+     * should use {@link #snapshot(double[])}.
+     *
+     * @param series the data series
+     * @param index the position in the ring buffer
+     *
+     * @return the value at the given position
+     */
+    public double getValue(final int series, final int index) {
+	return values.get(index * nseries + series);
+    }
+
+    /*
+     * Return the scaler tracking the largest of the first nshow series,
+     * so that all the charts showing the same series of this model share
+     * the one window. A chart can't show more series than we hold.
+     */
+    synchronized AutoScaler getScaler(final int nshow) {
+	int n = Math.min(nshow, nseries);
+	if (scalers == null) {
+	    scalers = new AutoScaler[nseries];
+	}
+	if (scalers[n - 1] == null) {
+	    scalers[n - 1] = new AutoScaler(this, n);
+	}
+	return scalers[n - 1];
+    }
+
+    /*
+     * Return the stacked form of the first few series of this model, so
+     * that all the stacked charts showing the same series of this model
+     * share the one copy. Throws IllegalArgumentException if we don't
+     * hold that many series.
+     */
+    synchronized StackedModel getStacked(final int series) {
+	if (series < 1 || series > nseries) {
+	    throw new IllegalArgumentException("Can't stack " + series
+		+ " series of a model holding " + nseries);
+	}
+	if (stacks == null) {
+	    stacks = new StackedModel[nseries];
+	}
+	if (stacks[series - 1] == null) {
+	    stacks[series - 1] = new StackedModel(this, series);
+	}
+	return stacks[series - 1];
+    }
+
+    /**
+     * Add a data point to the first data series. Any other series are
+     * given a zero.
+     *
+     * @param d the data point to add
+     */
+    public void add(final double d) {
+	long s = beginWrite();
+	try {
+	    advance();
+	    values.set(ncur * nseries, d);
+	    clear(1, ncur);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add data to the first two data series. Any other series are given a
+     * zero.
+     *
+     * @param d1 the first data point to add
+     * @param d2 the second data point to add
+     *
+     * @throws IllegalArgumentException if the model has only one series
+     */
+    public void add(final double d1, final double d2) {
+	checkPair();
+	long s = beginWrite();
+	try {
+	    advance();
+	    int base = ncur * nseries;
+	    values.set(base, d1);
+	    values.set(base + 1, d2);
+	    clear(2, ncur);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add a data point to every series, with the values for each series
+     * given in order. There must be a value for every series.
+     *
+     * @param d the data points to add, one for each series
+     *
+     * @throws IllegalArgumentException if there isn't a value for every
+     * series
+     */
+    public void add(final double... d) {
+	addColumn(d, 0);
+    }
+
+    /**
+     * Add a data point to every series, with the values for each series
+     * taken in order from the given array, starting at the given offset.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the value for the first series
+     *
+     * @throws IllegalArgumentException if the array doesn't hold a value
+     * for every series starting at the offset
+     */
+    public void addColumn(final double[] src, final int off) {
+	checkRange(src, off, nseries);
+	long s = beginWrite();
+	try {
+	    advance();
+	    values.set(ncur * nseries, src, off, nseries);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add several data points to every series, oldest first. The values
+     * for each point are stored together, as in a snapshot, so the value
+     * for series s of point i is at index off + i * getSeriesCount() + s.
+     * Listeners are notified once, after all the data has been added.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the first value
+     * @param len the number of data points to add
+     *
+     * @throws IllegalArgumentException if the array doesn't hold that
+     * many data points starting at the offset
+     */
+    public void addColumns(final double[] src, final int off,
+		final int len) {
+	addColumns(src, off, len, 0L);
+    }
+
+    /*
+     * Add several data points to every series, as for addColumns, having
+     * first missed the given number of earlier data points, which count
+     * towards the total but aren't held. This lets a model derived from
+     * another keep the same total when it can only see the data that's
+     * still held.
+     */
+    void addColumns(final double[] src, final int off, final int len,
+		final long missed) {
+	if (len <= 0) {
+	    return;
+	}
+	checkRange(src, off, (long) len * nseries);
+	// only the most recent nsize points will be kept
+	int n = Math.min(len, nsize);
+	int start = off + (len - n) * nseries;
+	long s = beginWrite();
+	try {
+	    int pos = nextPosition();
+	    int first = Math.min(n, nsize - pos);
+	    values.set(pos * nseries, src, start, first * nseries);
+	    values.set(0, src, start + first * nseries, (n - first) * nseries);
+	    advance(n, len + missed);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /*
+     * Fill an empty model with the given data, oldest first, as saved
+     * from another model that had seen the given total number of points.
+     */
+    void restore(final double[] src, final int count, final long total) {
+	long s = beginWrite();
+	try {
+	    values.set(0, src, 0, count * nseries);
+	    ncur = count - 1;
+	    ncount = count;
+	    ntotal = total;
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add an array of data points to the first data series, oldest first.
+     * Any other series are given a zero for each data point. Listeners
+     * are notified once, after all the data has been added.
+     *
+     * @param src the array containing the data to add
+     * @param off the offset in the array of the first data point
+     * @param len the number of data points to add
+     *
+     * @throws IllegalArgumentException if the array doesn't hold that
+     * many data points starting at the offset
+     */
+    public void add(final double[] src, final int off, final int len) {
+	if (len <= 0) {
+	    return;
+	}
+	checkRange(src, off, len);
+	// only the most recent nsize points will be kept
+	int n = Math.min(len, nsize);
+	int start = off + len - n;
+	long s = beginWrite();
+	try {
+	    int pos = nextPosition();
+	    if (nseries == 1) {
+		int first = Math.min(n, nsize - pos);
+		values.set(pos, src, start, first);
+		values.set(0, src, start + first, n - first);
+	    } else {
+		put(0, src, start, n, pos);
+		clear(1, pos, n);
+	    }
+	    advance(n, len);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add all the remaining data points in a buffer to the first data
+     * series, oldest first. Any other series are given a zero for each
+     * data point. The buffer's position is advanced to its limit.
+     * Listeners are notified once, after all the data has been added.
+     *
+     * @param buf the buffer containing the data to add
+     */
+    public void add(final DoubleBuffer buf) {
+	int len = buf.remaining();
+	if (len == 0) {
+	    return;
+	}
+	int n = Math.min(len, nsize);
+	buf.position(buf.position() + len - n);
+	long s = beginWrite();
+	try {
+	    int pos = nextPosition();
+	    if (nseries == 1) {
+		int first = Math.min(n, nsize - pos);
+		values.set(pos, buf, first);
+		values.set(0, buf, n - first);
+	    } else {
+		for (int i = 0; i < n; i++) {
+		    values.set(pos * nseries, buf.get());
+		    clear(1, pos);
+		    pos++;
+		    if (pos == nsize) {
+			pos = 0;
+		    }
+		}
+	    }
+	    advance(n, len);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add arrays of data points to the first two data series, oldest
+     * first. Any other series are given a zero for each data point.
+     * Listeners are notified once, after all the data has been added.
+     *
+     * @param src1 the array containing the data for the first series
+     * @param src2 the array containing the data for the second series
+     * @param off the offset in the arrays of the first data point
+     * @param len the number of data points to add
+     *
+     * @throws IllegalArgumentException if the model has only one series,
+     * or either array doesn't hold that many data points starting at the
+     * offset
+     */
+    public void add(final double[] src1, final double[] src2, final int off,
+		final int len) {
+	if (len <= 0) {
+	    return;
+	}
+	checkPair();
+	checkRange(src1, off, len);
+	checkRange(src2, off, len);
+	int n = Math.min(len, nsize);
+	int start = off + len - n;
+	long s = beginWrite();
+	try {
+	    int pos = nextPosition();
+	    put(0, src1, start, n, pos);
+	    put(1, src2, start, n, pos);
+	    clear(2, pos, n);
+	    advance(n, len);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /**
+     * Add the remaining data points in a pair of buffers to the first two
+     * data series, oldest first. If the buffers have different amounts of
+     * data remaining, only the smaller amount is added from each. Any
+     * other series are given a zero for each data point. The positions
+     * of the buffers are advanced past the data added.
+     * Listeners are notified once, after all the data has been added.
+     *
+     * @param buf1 the buffer containing the data for the first series
+     * @param buf2 the buffer containing the data for the second series
+     *
+     * @throws IllegalArgumentException if the model has only one series
+     */
+    public void add(final DoubleBuffer buf1, final DoubleBuffer buf2) {
+	int len = Math.min(buf1.remaining(), buf2.remaining());
+	if (len == 0) {
+	    return;
+	}
+	checkPair();
+	int n = Math.min(len, nsize);
+	buf1.position(buf1.position() + len - n);
+	buf2.position(buf2.position() + len - n);
+	long s = beginWrite();
+	try {
+	    int pos = nextPosition();
+	    for (int i = 0; i < n; i++) {
+		int base = pos * nseries;
+		values.set(base, buf1.get());
+		values.set(base + 1, buf2.get());
+		clear(2, pos);
+		pos++;
+		if (pos == nsize) {
+		    pos = 0;
+		}
+	    }
+	    advance(n, len);
+	} finally {
+	    endWrite(s);
+	}
+	fireStateChanged();
+    }
+
+    /*
+     * Copy n values into one series, starting at ring position pos.
+     */
+    private void put(final int series, final double[] src, final int start,
+		final int n, final int pos) {
+	int p = pos;
+	for (int i = start; i < start + n; i++) {
+	    values.set(p * nseries + series, src[i]);
+	    p++;
+	    if (p == nsize) {
+		p = 0;
+	    }
+	}
+    }
+
+    /*
+     * Zero the series from the given one on at ring position pos, for the
+     * methods that only add to the first series or two, so the others
+     * don't keep the values from the last time round the ring.
+     */
+    private void clear(final int from, final int pos) {
+	int base = pos * nseries;
+	for (int s = from; s < nseries; s++) {
+	    values.set(base + s, 0.0d);
+	}
+    }
+
+    /*
+     * Zero the series from the given one on at n ring positions, starting
+     * at pos.
+     */
+    private void clear(final int from, final int pos, final int n) {
+	int p = pos;
+	for (int i = 0; i < n; i++) {
+	    clear(from, p);
+	    p++;
+	    if (p == nsize) {
+		p = 0;
+	    }
+	}
+    }
+
+    /*
+     * Check that there are at least two series, for the methods that add
+     * to the first two.
+     */
+    private void checkPair() {
+	if (nseries < 2) {
+	    throw new IllegalArgumentException("Model has only one series");
+	}
+    }
+
+    /*
+     * Check that an array holds len values starting at off, before we
+     * start writing, so a bad argument can't leave an update half done.
+     */
+    private static void checkRange(final double[] src, final int off,
+		final long len) {
+	if (off < 0 || off + len > src.length) {
+	    throw new IllegalArgumentException("Array of length " + src.length
+		+ " doesn't hold " + len + " values from offset " + off);
+	}
+    }
+
+    /*
+     * Mark the start of an update, returning the previous sequence number.
+     * The update is published by passing that to endWrite(), which must
+     * always be called, even if the update fails, or readers would wait
+     * for it forever.
+     */
+    private long beginWrite() {
+	long s = seq;
+	seq = s + 1;
+	// stop the data writes being seen before the sequence change
+	VarHandle.storeStoreFence();
+	return s;
+    }
+
+    /*
+     * Publish an update started by beginWrite().
+     */
+    private void endWrite(final long s) {
+	values.setState(ncur, ncount, ntotal);
+	seq = s + 2;
+    }
+
+    private void advance() {
+	ncur++;
+	if (ncur == nsize) {
+	    // wrap back to the beginning
+	    ncur = 0;
+	}
+	if (ncount < nsize) {
+	    ncount++;
+	}
+	ntotal++;
+    }
+
+    /*
+     * The position the next data point will be stored at.
+     */
+    private int nextPosition() {
+	return ncur + 1 == nsize ? 0 : ncur + 1;
+    }
+
+    /*
+     * Move on n positions, having been given len data points in total of
+     * which we kept the last n.
+     */
+    private void advance(final int n, final long len) {
+	ncur = (ncur + n) % nsize;
+	ncount = Math.min(ncount + n, nsize);
+	ntotal += len;
+    }
+
+    /**
+     * Take a consistent copy of the data, which may be called from any
+     * thread. The data is copied in chronological order, oldest first, with
+     * the values for each point stored together as in the model, so the
+     * value for series s of point i is at index i * getSeriesCount() + s.
+     *
+     * @param dest the array to copy the data into, which must be at least
+     * getSize() * getSeriesCount() long
+     *
+     * @return the total number of data points ever added at the time of
+     * the copy; the number of data points copied is the smaller of this
+     * and getSize()
+     */
+    public long snapshot(final double[] dest) {
+	return snapshot(dest, nsize);
+    }
+
+    /**
+     * Take a consistent copy of the most recent data, which may be called
+     * from any thread. This is the same as {@link #snapshot(double[])}, but
+     * copies at most the given number of the most recent data points.
+     *
+     * @param dest the array to copy the data into, which must be at least
+     * nmax * getSeriesCount() long
+     * @param nmax the largest number of data points to copy
+     *
+     * @return the total number of data points ever added at the time of
+     * the copy; the number of data points copied is the smallest of this,
+     * getSize(), and nmax
+     */
+    public long snapshot(final double[] dest, final int nmax) {
+	return snapshot(dest, null, nmax);
+    }
+
+    /*
+     * Take a consistent copy of the most recent data as floats, as for
+     * snapshot(double[], int), for copies that will be drawn.
+     */
+    long snapshot(final float[] dest, final int nmax) {
+	return snapshot(null, dest, nmax);
+    }
+
+    /*
+     * Copy the most recent data into whichever of the arrays we're given.
+     */
+    private long snapshot(final double[] ddest, final float[] fdest,
+		final int nmax) {
+	while (true) {
+	    long s = seq;
+	    if ((s & 1L) == 0L) {
+		int cur = ncur;
+		int count = Math.min(ncount, nmax);
+		long total = ntotal;
+		int oldest = cur - count + 1;
+		if (oldest < 0) {
+		    oldest += nsize;
+		}
+		int first = Math.min(count, nsize - oldest);
+		if (ddest == null) {
+		    values.get(oldest * nseries, fdest, 0, first * nseries);
+		    values.get(0, fdest, first * nseries,
+			(count - first) * nseries);
+		} else {
+		    values.get(oldest * nseries, ddest, 0, first * nseries);
+		    values.get(0, ddest, first * nseries,
+			(count - first) * nseries);
+		}
+		// the copy must complete before we check the sequence again
+		VarHandle.loadLoadFence();
+		if (seq == s) {
+		    return total;
+		}
+	    }
+	    Thread.onSpinWait();
+	}
+    }
+
+    /**
+     * Add a listener to be notified when data is added.
+     *
+     * @param l the ChangeListener to add
+     */
+    public void addChangeListener(final ChangeListener l) {
+	listenerList.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param l the ChangeListener to remove
+     */
+    public void removeChangeListener(final ChangeListener l) {
+	listenerList.remove(ChangeListener.class, l);
+    }
+
+    private void fireStateChanged() {
+	Object[] listeners = listenerList.getListenerList();
+	for (int i = listeners.length - 2; i >= 0; i -= 2) {
+	    if (listeners[i] == ChangeListener.class) {
+		((ChangeListener) listeners[i + 1]).stateChanged(changeEvent);
+	    }
+	}
+    }
+}
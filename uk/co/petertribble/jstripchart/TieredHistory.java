@@ -0,0 +1,344 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jstripchart;
+
+import java.io.Serializable;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Keeps a long history of the data in a StripChartModel at decreasing
+ * resolution, in the style of a round robin database. For example, the
+ * last hour at the original resolution, the last day at one point per
+ * minute, and the last month at one point per hour, all in a fixed amount
+ * of memory.
+ *
+ * Each tier is itself a StripChartModel, so can be shown by any chart.
+ * Tier 0 is the original model. As data is added to it, it's rolled up
+ * into the coarser tiers: each point in tier t summarizes a fixed number
+ * of points from tier t - 1, and is added once all of those points have
+ * arrived. For a source model with n series, each coarser tier holds
+ * 3n series: the averages come first, in the same order as the source
+ * series, so a chart shows the average by default; then the minimums,
+ * then the maximums.
+ */
+public final class TieredHistory implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The offset of the average values in a rolled up tier, in units of
+     * the number of source series.
+     */
+    public static final int AVERAGE = 0;
+    /**
+     * The offset of the minimum values in a rolled up tier, in units of
+     * the number of source series.
+     */
+    public static final int MINIMUM = 1;
+    /**
+     * The offset of the maximum values in a rolled up tier, in units of
+     * the number of source series.
+     */
+    public static final int MAXIMUM = 2;
+
+    /**
+     * The number of series in the source model.
+     */
+    private final int nseries;
+    /**
+     * The models for each tier, tier 0 being the source.
+     */
+    private final StripChartModel[] tiers;
+    /**
+     * The number of points from the tier below in each point of a tier.
+     */
+    private final int[] factors;
+    /**
+     * The number of source points in each point of a tier.
+     */
+    private final long[] resolutions;
+
+    /**
+     * The running sums for the point each tier is building, for tier t
+     * and series s at index t * nseries + s.
+     */
+    private final double[] sums;
+    /**
+     * The running minimums, stored like the sums.
+     */
+    private final double[] mins;
+    /**
+     * The running maximums, stored like the sums.
+     */
+    private final double[] maxs;
+    /**
+     * How many points from the tier below each tier has so far.
+     */
+    private final int[] counts;
+    /**
+     * Used to pass a completed point to a tier's model.
+     */
+    private final double[] column;
+    /**
+     * Listens for changes to the source model.
+     */
+    private final SourceListener listener = new SourceListener();
+
+    /**
+     * The total number of source points seen.
+     */
+    private long nseen;
+
+    /**
+     * Create a new TieredHistory. The data already in the source model is
+     * not rolled up, only data added from now on.
+     *
+     * @param source the StripChartModel holding the original data
+     * @param nfactors for each tier after the first, the number of points
+     * from the tier below that make up one point of this tier
+     * @param sizes for each tier after the first, the number of points the
+     * tier holds
+     *
+     * @throws IllegalArgumentException if there isn't a size for each
+     * factor, a factor is less than 2, so a tier would be no coarser than
+     * the one below, or a size isn't positive
+     */
+    public TieredHistory(final StripChartModel source, final int[] nfactors,
+			final int[] sizes) {
+	if (nfactors.length != sizes.length) {
+	    throw new IllegalArgumentException("Got " + nfactors.length
+		+ " factors but " + sizes.length + " sizes");
+	}
+	for (int t = 0; t < nfactors.length; t++) {
+	    if (nfactors[t] < 2) {
+		throw new IllegalArgumentException("Tier factor "
+		    + nfactors[t] + " must be at least 2");
+	    }
+	    if (sizes[t] < 1) {
+		throw new IllegalArgumentException("Tier size " + sizes[t]
+		    + " must be positive");
+	    }
+	}
+	nseries = source.getSeriesCount();
+	int ntiers = nfactors.length + 1;
+	tiers = new StripChartModel[ntiers];
+	factors = new int[ntiers];
+	resolutions = new long[ntiers];
+	tiers[0] = source;
+	factors[0] = 1;
+	resolutions[0] = 1;
+	for (int t = 1; t < ntiers; t++) {
+	    tiers[t] = new StripChartModel(3 * nseries, sizes[t - 1],
+					source.getStorage());
+	    factors[t] = nfactors[t - 1];
+	    resolutions[t] = resolutions[t - 1] * factors[t];
+	}
+	sums = new double[ntiers * nseries];
+	mins = new double[ntiers * nseries];
+	maxs = new double[ntiers * nseries];
+	counts = new int[ntiers];
+	column = new double[3 * nseries];
+	for (int t = 1; t < ntiers; t++) {
+	    reset(t);
+	}
+	nseen = source.getTotal();
+	source.addChangeListener(listener);
+    }
+
+    /**
+     * Stop following the source model. The tiers keep the data rolled up
+     * so far, but no more is added.
+     */
+    public void detach() {
+	tiers[0].removeChangeListener(listener);
+    }
+
+    /**
+     * Return the number of tiers, including the source.
+     *
+     * @return the number of tiers
+     */
+    public int getTierCount() {
+	return tiers.length;
+    }
+
+    /**
+     * Return the model holding the data for a tier.
+     *
+     * @param tier the tier, 0 being the source model
+     *
+     * @return the StripChartModel for the tier
+     */
+    public StripChartModel getTier(final int tier) {
+	return tiers[tier];
+    }
+
+    /**
+     * Return the number of source data points summarized by each point of
+     * a tier.
+     *
+     * @param tier the tier, 0 being the source model
+     *
+     * @return the resolution of the tier, in source data points
+     */
+    public long getResolution(final int tier) {
+	return resolutions[tier];
+    }
+
+    /**
+     * Return the length of history a tier covers when it's full.
+     *
+     * @param tier the tier, 0 being the source model
+     *
+     * @return the span of the tier, in source data points
+     */
+    public long getSpan(final int tier) {
+	return resolutions[tier] * tiers[tier].getSize();
+    }
+
+    /**
+     * Return the finest tier that covers the given span of history.
+     *
+     * @param span the span of history to be shown, in source data points
+     *
+     * @return the best tier to show that span, or the coarsest tier if
+     * none covers it
+     */
+    public int bestTier(final long span) {
+	for (int t = 0; t < tiers.length; t++) {
+	    if (getSpan(t) >= span) {
+		return t;
+	    }
+	}
+	return tiers.length - 1;
+    }
+
+    /**
+     * Return the model of the finest tier that covers the given span of
+     * history, suitable for passing to a chart's setModel method.
+     *
+     * @param span the span of history to be shown, in source data points
+     *
+     * @return the StripChartModel that best shows that span
+     */
+    public StripChartModel getModelFor(final long span) {
+	return tiers[bestTier(span)];
+    }
+
+    private void reset(final int t) {
+	int base = t * nseries;
+	for (int s = 0; s < nseries; s++) {
+	    sums[base + s] = 0.0d;
+	    mins[base + s] = Double.POSITIVE_INFINITY;
+	    maxs[base + s] = Double.NEGATIVE_INFINITY;
+	}
+	counts[t] = 0;
+    }
+
+    /*
+     * Fold a point from the source into the first rolled up tier.
+     */
+    private void addSource(final StripChartModel source, final int index) {
+	if (tiers.length == 1) {
+	    return;
+	}
+	int base = nseries;
+	for (int s = 0; s < nseries; s++) {
+	    double v = source.getValue(s, index);
+	    sums[base + s] += v;
+	    if (v < mins[base + s]) {
+		mins[base + s] = v;
+	    }
+	    if (v > maxs[base + s]) {
+		maxs[base + s] = v;
+	    }
+	}
+	counts[1]++;
+	if (counts[1] == factors[1]) {
+	    complete(1);
+	}
+    }
+
+    /*
+     * Tier t has a complete point, so add it to the tier's model and fold
+     * it into the next tier.
+     */
+    private void complete(final int t) {
+	int base = t * nseries;
+	for (int s = 0; s < nseries; s++) {
+	    column[AVERAGE * nseries + s] = sums[base + s] / factors[t];
+	    column[MINIMUM * nseries + s] = mins[base + s];
+	    column[MAXIMUM * nseries + s] = maxs[base + s];
+	}
+	reset(t);
+	tiers[t].addColumn(column, 0);
+	int next = t + 1;
+	if (next == tiers.length) {
+	    return;
+	}
+	int nbase = next * nseries;
+	for (int s = 0; s < nseries; s++) {
+	    sums[nbase + s] += column[AVERAGE * nseries + s];
+	    if (column[MINIMUM * nseries + s] < mins[nbase + s]) {
+		mins[nbase + s] = column[MINIMUM * nseries + s];
+	    }
+	    if (column[MAXIMUM * nseries + s] > maxs[nbase + s]) {
+		maxs[nbase + s] = column[MAXIMUM * nseries + s];
+	    }
+	}
+	counts[next]++;
+	if (counts[next] == factors[next]) {
+	    complete(next);
+	}
+    }
+
+    /*
+     * Roll up new data as it's added to the source model. This runs on the
+     * thread adding the data, so the tiers have the same single writer.
+     */
+    private final class SourceListener implements ChangeListener,
+	    Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public void stateChanged(final ChangeEvent e) {
+	    StripChartModel source = tiers[0];
+	    long total = source.getTotal();
+	    // if we've missed data, we can only use what's still there
+	    long nnew = Math.min(total - nseen, source.getCount());
+	    nseen = total;
+	    int nsize = source.getSize();
+	    int i = source.getCursor() - (int) nnew + 1;
+	    if (i < 0) {
+		i += nsize;
+	    }
+	    for (long k = 0; k < nnew; k++) {
+		addSource(source, i);
+		i++;
+		if (i == nsize) {
+		    i = 0;
+		}
+	    }
+	}
+    }
+}